@@ -0,0 +1,35 @@
+package pl.com.example.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks with JMH command line arguments. Unless the result format
+ * is given, results are exported as JSON to {@value #DEFAULT_RESULT}
+ * so they can be compared across releases
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT = "jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+
+        if(!commandLine.getResultFormat().hasValue()){
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        if(!commandLine.getResult().hasValue()){
+            options.result(DEFAULT_RESULT);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,74 @@
+package pl.com.example.bench;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.com.example.CorpusGenerator;
+import pl.com.example.ParseMode;
+import pl.com.example.ParseTrees;
+import pl.com.example.RefactorOptions;
+import pl.com.example.Refactoring;
+import pl.com.example.RefactoringListener;
+import pl.com.example.grammar.JavaLexer;
+import pl.com.example.grammar.JavaParser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walk and rendering of a method whose if condition chains thousands of operands.
+ * The fork runs with a small thread stack, where the recursive walker already
+ * overflows on 10000 operands
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+@State(Scope.Benchmark)
+public class DeepConditionBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"EXTRACT", "INLINE"})
+    public Refactoring refactoring;
+
+    @Param({"10", "1000", "10000"})
+    public int operands;
+
+    private CommonTokenStream tokens;
+    private ParseTree tree;
+    private RefactorOptions options;
+
+    @Setup
+    public void parse(){
+
+        String source = new CorpusGenerator()
+                .withSeed(SEED)
+                .withMethods(1)
+                .withIfs(1)
+                .withOperands(operands)
+                .generateClass(0);
+
+        tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromString(source)));
+        tree = ParseMode.SLL_THEN_LL.parse(new JavaParser(tokens)).getTree();
+        options = RefactorOptions.parse(new String[]{"--refactoring", refactoring.name(), "."});
+    }
+
+    @Benchmark
+    public String walkAndRender(){
+        RefactoringListener listener = refactoring.createListener(tokens, options, null);
+        ParseTrees.WALKER.walk(listener, tree);
+        return listener.getRewriter().getText();
+    }
+}
@@ -0,0 +1,34 @@
+package pl.com.example.bench;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.com.example.grammar.JavaLexer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenization of the whole source by {@link JavaLexer}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Benchmark
+    public int tokenize(SourceState state){
+
+        CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromString(state.source)));
+        tokens.fill();
+
+        return tokens.size();
+    }
+}
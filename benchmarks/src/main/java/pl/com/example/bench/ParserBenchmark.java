@@ -0,0 +1,54 @@
+package pl.com.example.bench;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.com.example.ParseMode;
+import pl.com.example.grammar.JavaLexer;
+import pl.com.example.grammar.JavaParser;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JavaParser#compilationUnit()} over tokens lexed in advance,
+ * the parser DFA is shared between iterations just like in a batch run
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"LL", "SLL_THEN_LL"})
+    public ParseMode parseMode;
+
+    private List<? extends Token> tokens;
+
+    @Setup
+    public void lex(SourceState state){
+        CommonTokenStream stream = new CommonTokenStream(new JavaLexer(CharStreams.fromString(state.source)));
+        stream.fill();
+        tokens = stream.getTokens();
+    }
+
+    @Benchmark
+    public ParseMode.ParseOutcome parse(){
+        JavaParser parser = new JavaParser(new CommonTokenStream(new ListTokenSource(tokens)));
+        return parseMode.parse(parser);
+    }
+}
@@ -0,0 +1,83 @@
+package pl.com.example.bench;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.com.example.EditLog;
+import pl.com.example.ParseMode;
+import pl.com.example.PlanApplier;
+import pl.com.example.RefactorOptions;
+import pl.com.example.Refactoring;
+import pl.com.example.RefactoringListener;
+import pl.com.example.RefactoringPlan;
+import pl.com.example.grammar.JavaLexer;
+import pl.com.example.grammar.JavaParser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of edits recorded by a refactoring, both into a String and streamed into a writer,
+ * and the plan/apply split: snapshotting the edits into a plan and applying it to the source
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RewriteBenchmark {
+
+    @Param({"EXTRACT", "INLINE"})
+    public Refactoring refactoring;
+
+    private CharStream input;
+    private EditLog edits;
+    private RefactoringPlan plan;
+
+    @Setup
+    public void walk(SourceState state){
+        input = CharStreams.fromString(state.source);
+        CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(input));
+        JavaParser.CompilationUnitContext tree = ParseMode.SLL_THEN_LL.parse(new JavaParser(tokens)).getTree();
+        RefactorOptions options = RefactorOptions.parse(new String[]{"--refactoring", refactoring.name(), "."});
+
+        RefactoringListener listener = refactoring.createListener(tokens, options, null);
+        ParseTreeWalker.DEFAULT.walk(listener, tree);
+        edits = listener.getRewriter();
+        plan = edits.toPlan();
+    }
+
+    @Benchmark
+    public String getText(){
+        return edits.getText();
+    }
+
+    @Benchmark
+    public void writeTo() throws IOException {
+        edits.writeTo(Writer.nullWriter());
+    }
+
+    @Benchmark
+    public RefactoringPlan toPlan(){
+        return edits.toPlan();
+    }
+
+    @Benchmark
+    public void applyPlan() throws IOException {
+        PlanApplier.apply(plan, input, Writer.nullWriter());
+    }
+}
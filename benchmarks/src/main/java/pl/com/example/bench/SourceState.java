@@ -0,0 +1,45 @@
+package pl.com.example.bench;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import pl.com.example.CorpusGenerator;
+
+/**
+ * Benchmark input parametrized by file size and density of if statements,
+ * a single class of the generated corpus
+ */
+@State(Scope.Benchmark)
+public class SourceState {
+
+    private static final long SEED = 42;
+
+    public enum Size {
+        SMALL(10), MEDIUM(100), LARGE(1000);
+
+        private final int methods;
+
+        Size(int methods) {
+            this.methods = methods;
+        }
+    }
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    public Size size;
+
+    // if statements per method
+    @Param({"1", "5", "20"})
+    public int ifDensity;
+
+    public String source;
+
+    @Setup
+    public void generate(){
+        source = new CorpusGenerator()
+                .withSeed(SEED)
+                .withMethods(size.methods)
+                .withIfs(ifDensity)
+                .generateClass(0);
+    }
+}
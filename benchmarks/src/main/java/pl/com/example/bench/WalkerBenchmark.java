@@ -0,0 +1,66 @@
+package pl.com.example.bench;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.com.example.ParseMode;
+import pl.com.example.ParseTrees;
+import pl.com.example.RefactorOptions;
+import pl.com.example.Refactoring;
+import pl.com.example.RefactoringListener;
+import pl.com.example.grammar.JavaLexer;
+import pl.com.example.grammar.JavaParser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traversal of a parsed tree with listener of each refactoring, by the recursive
+ * {@link ParseTreeWalker} and the {@link ParseTrees#WALKER iterative one} used by the tool.
+ * Listener records its edits, rendering them is measured by {@link RewriteBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalkerBenchmark {
+
+    @Param({"EXTRACT", "INLINE"})
+    public Refactoring refactoring;
+
+    @Param({"ITERATIVE", "RECURSIVE"})
+    public String walker;
+
+    private CommonTokenStream tokens;
+    private ParseTree tree;
+    private RefactorOptions options;
+    private ParseTreeWalker treeWalker;
+
+    @Setup
+    public void parse(SourceState state){
+        tokens = new CommonTokenStream(new JavaLexer(CharStreams.fromString(state.source)));
+        tree = ParseMode.SLL_THEN_LL.parse(new JavaParser(tokens)).getTree();
+        options = RefactorOptions.parse(new String[]{"--refactoring", refactoring.name(), "."});
+        treeWalker = walker.equals("RECURSIVE") ? ParseTreeWalker.DEFAULT : ParseTrees.WALKER;
+    }
+
+    @Benchmark
+    public RefactoringListener walk(){
+        RefactoringListener listener = refactoring.createListener(tokens, options, null);
+        treeWalker.walk(listener, tree);
+        return listener;
+    }
+}
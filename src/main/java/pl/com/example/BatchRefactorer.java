@@ -0,0 +1,177 @@
+package pl.com.example;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Discovers java sources under given roots and refactors them
+ * concurrently on a work-stealing pool
+ */
+public class BatchRefactorer {
+
+    private static final String JAVA_EXTENSION = ".java";
+
+    private final RefactorOptions options;
+    private final ParserPool parserPool;
+
+    public BatchRefactorer(RefactorOptions options) {
+        this.options = options;
+        this.parserPool = new ParserPool();
+    }
+
+    /**
+     * Refactors all java files found under the source roots
+     */
+    public BatchReport run(){
+
+        for(Path warmUpRoot : options.getWarmUpRoots()){
+            parserPool.warmUp(discoverSources(warmUpRoot), options.getParseMode());
+        }
+
+        ProjectMethodIndex projectIndex = openMethodIndex();
+        FileRefactorer fileRefactorer = new FileRefactorer(options, parserPool, projectIndex, openCache(projectIndex));
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(options.getThreads());
+        Writer patches = openDiff();
+
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>();
+
+            for(Path root : options.getRoots()){
+                for(Path file : discoverSources(root)){
+                    Path target = options.resolveOutput(root, file);
+                    futures.add(pool.submit(() -> fileRefactorer.refactor(file, target)));
+                }
+            }
+
+            List<FileResult> results = new ArrayList<>(futures.size());
+
+            for(Future<FileResult> future : futures){
+
+                FileResult result = future.get();
+                results.add(result);
+
+                // in the order of sources, each as soon as it and all before it are done
+                if(patches != null){
+                    patches.write(result.takePatch());
+                }
+            }
+
+            return new BatchReport(results, System.nanoTime() - start, options.getThreads(), parserPool);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+            closeDiff(patches);
+        }
+    }
+
+    /**
+     * Opens output of the unified diff, null when refactored files are written instead
+     */
+    private Writer openDiff(){
+
+        if(options.getDiff() == null){
+            return null;
+        }
+
+        if(options.isDiffToStandardOutput()){
+            return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        }
+
+        try {
+            if(options.getDiff().getParent() != null){
+                Files.createDirectories(options.getDiff().getParent());
+            }
+            return Files.newBufferedWriter(options.getDiff(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Standard output is flushed but stays open for the report
+     */
+    private void closeDiff(Writer patches){
+
+        if(patches == null){
+            return;
+        }
+
+        try {
+            if(options.isDiffToStandardOutput()){
+                patches.flush();
+            }
+            else {
+                patches.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Maps project method index, rebuilding it first when it is missing or older than the sources
+     */
+    private ProjectMethodIndex openMethodIndex(){
+
+        if(options.getMethodIndex() == null){
+            return null;
+        }
+
+        return ProjectMethodIndex.openOrBuild(options.getMethodIndex(), options.getRoots(),
+                parserPool, options.getParseMode(), options.getThreads());
+    }
+
+    /**
+     * Opens result cache for the configuration of this run, null when caching is off
+     * @param projectIndex predicates inlined across files, part of the configuration
+     */
+    private ResultCache openCache(ProjectMethodIndex projectIndex){
+
+        if(options.getCacheDirectory() == null){
+            return null;
+        }
+
+        try {
+            return ResultCache.open(options.getCacheDirectory(), options.getCacheSizeBytes(),
+                    ResultCache.describe(options, projectIndex));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Lists java files under root, root itself may be a single file
+     * @param root directory or file
+     */
+    static List<Path> discoverSources(Path root){
+
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(JAVA_EXTENSION))
+                    .sorted()
+                    .toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package pl.com.example;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Aggregated results of batch refactoring run
+ */
+public class BatchReport {
+
+    private static final int SLOWEST_FILES_SHOWN = 5;
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+    private static final double BYTES_IN_MEGABYTE = 1024.0 * 1024.0;
+
+    private final List<FileResult> results;
+    private final long wallNanos;
+    private final int threads;
+    private final ParserPool parserPool;
+
+    public BatchReport(List<FileResult> results, long wallNanos, int threads, ParserPool parserPool) {
+        this.results = results;
+        this.wallNanos = wallNanos;
+        this.threads = threads;
+        this.parserPool = parserPool;
+    }
+
+    public List<FileResult> getResults() {
+        return results;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getFailedCount(){
+        return results.stream().filter(FileResult::isFailed).count();
+    }
+
+    public long getLlFallbackCount(){
+        return results.stream().filter(FileResult::isLlFallback).count();
+    }
+
+    public long getSkippedCount(){
+        return results.stream().filter(FileResult::isSkipped).count();
+    }
+
+    public long getCachedCount(){
+        return results.stream().filter(FileResult::isCached).count();
+    }
+
+    public long getConflictCount(){
+        return results.stream().mapToLong(FileResult::getConflicts).sum();
+    }
+
+    /**
+     * Prints per-file throughput and total wall-clock time of the run
+     * @param out stream the report is printed to
+     */
+    public void print(PrintStream out){
+
+        long bytesRead = 0;
+        long bytesWritten = 0;
+        long fileNanos = 0;
+
+        for(FileResult result : results){
+            bytesRead += result.getBytesRead();
+            bytesWritten += result.getBytesWritten();
+            fileNanos += result.getNanos();
+        }
+
+        double wallSeconds = wallNanos / NANOS_IN_SECOND;
+        int files = results.size();
+
+        out.printf("Files:            %d (%d failed)%n", files, getFailedCount());
+        out.printf("Threads:          %d%n", threads);
+        out.printf("Skipped:          %d (%.1f%%, nothing to refactor)%n",
+                getSkippedCount(), files == 0 ? 0.0 : 100.0 * getSkippedCount() / files);
+        out.printf("Cached:           %d (%.1f%%, refactored before)%n",
+                getCachedCount(), files == 0 ? 0.0 : 100.0 * getCachedCount() / files);
+        out.printf("LL fallbacks:     %d%n", getLlFallbackCount());
+        out.printf("Edit conflicts:   %d%n", getConflictCount());
+        out.printf("Wall time:        %.3f s%n", wallSeconds);
+        out.printf("Files/s:          %.1f%n", files / Math.max(wallSeconds, 1e-9));
+        out.printf("MB/s read:        %.2f%n", bytesRead / BYTES_IN_MEGABYTE / Math.max(wallSeconds, 1e-9));
+        out.printf("Bytes read:       %d%n", bytesRead);
+        out.printf("Bytes written:    %d%n", bytesWritten);
+        out.printf("Avg ms per file:  %.3f%n", files == 0 ? 0.0 : fileNanos / NANOS_IN_MILLI / files);
+        parserPool.print(out);
+
+        List<FileResult> slowest = new ArrayList<>(results);
+        slowest.sort(Comparator.comparingLong(FileResult::getNanos).reversed());
+
+        if(!slowest.isEmpty()){
+            out.println("Slowest files:");
+        }
+
+        for(FileResult result : slowest.subList(0, Math.min(SLOWEST_FILES_SHOWN, slowest.size()))){
+            out.printf("  %10.3f ms  %s%n", result.getNanos() / NANOS_IN_MILLI, result.getSource());
+        }
+
+        for(FileResult result : results){
+            if(result.isFailed()){
+                out.printf("FAILED %s: %s%n", result.getSource(), result.getFailure());
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import pl.com.example.grammar.JavaParserBaseListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs several refactorings in a single walk of one parse tree.
+ * Every rule event is dispatched to refactoring listeners in the given order.
+ * Listeners share one {@link EditLog}, each through its own owner view, so an edit
+ * overlapping another refactoring's edit is rejected and reported as a conflict.
+ * Symbols are tracked once: the table is updated before listeners see a rule
+ * and scopes are closed after they have left it, listeners get a read-only view.
+ */
+public class CompositeRefactoringListener extends JavaParserBaseListener implements RefactoringListener {
+
+    private final EditLog edits;
+    private final SymbolTrackingListener symbolTracker;
+    private final Map<Refactoring, RefactoringListener> listeners = new LinkedHashMap<>();
+
+    /**
+     * @param tokens tokens of the walked file
+     * @param refactorings refactorings in the order their listeners are notified
+     * @param options refactoring options
+     * @param projectIndex predicates declared across the source tree, may be null
+     */
+    public CompositeRefactoringListener(
+            CommonTokenStream tokens,
+            List<Refactoring> refactorings,
+            RefactorOptions options,
+            ProjectMethodIndex projectIndex
+    ) {
+        this.edits = new EditLog(tokens);
+        this.symbolTracker = new SymbolTrackingListener();
+
+        LocalSymbols symbols = symbolTracker.getSymbols().readOnlyView();
+
+        for(Refactoring refactoring : refactorings){
+            listeners.put(refactoring, refactoring.createListener(
+                    edits.withOwner(refactoring.name()), symbols, options, projectIndex));
+        }
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+
+        symbolTracker.enterEveryRule(ctx);
+        ctx.enterRule(symbolTracker);
+
+        for(RefactoringListener listener : listeners.values()){
+            listener.enterEveryRule(ctx);
+            ctx.enterRule(listener);
+        }
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+
+        for(RefactoringListener listener : listeners.values()){
+            ctx.exitRule(listener);
+            listener.exitEveryRule(ctx);
+        }
+
+        ctx.exitRule(symbolTracker);
+        symbolTracker.exitEveryRule(ctx);
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+        for(RefactoringListener listener : listeners.values()){
+            listener.visitTerminal(node);
+        }
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+        for(RefactoringListener listener : listeners.values()){
+            listener.visitErrorNode(node);
+        }
+    }
+
+    @Override
+    public EditLog getRewriter() {
+        return edits;
+    }
+
+    /**
+     * Every listener sees the same if statements
+     */
+    @Override
+    public int getIfStatementCount() {
+        return listeners.values().iterator().next().getIfStatementCount();
+    }
+
+    @Override
+    public int getAppliedCount() {
+        return listeners.values().stream().mapToInt(RefactoringListener::getAppliedCount).sum();
+    }
+
+    public int getAppliedCount(Refactoring refactoring) {
+        return listeners.get(refactoring).getAppliedCount();
+    }
+
+    public List<Refactoring> getRefactorings() {
+        return new ArrayList<>(listeners.keySet());
+    }
+
+    /**
+     * Edits rejected because they overlapped edits of another refactoring
+     */
+    public List<String> getConflicts() {
+        return edits.getConflicts();
+    }
+}
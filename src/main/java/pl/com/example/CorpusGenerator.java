@@ -0,0 +1,255 @@
+package pl.com.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates reproducible java sources for load testing of the refactorings.
+ * Every class depends only on the seed and its own index, so any subset
+ * of a corpus can be regenerated and the same options always give the same files
+ */
+public class CorpusGenerator {
+
+    public static final String USAGE = """
+            Usage: CorpusGenerator --out DIR [options]
+              --classes N        classes to generate (default 100)
+              --methods N        methods per class (default 10)
+              --ifs N            if statements per method (default 5)
+              --operands N       && / || operands in every condition (default 3)
+              --depth N          nesting depth of if statements (default 1)
+              --predicates N     boolFunctionN predicates per class, called from conditions (default 2)
+              --per-package N    classes per package (default 100)
+              --seed N           random seed (default 42)""";
+
+    private static final String INDENT = "    ";
+    private static final String[] COMPARISONS = {">", "<", ">=", "<=", "==", "!="};
+
+    private Path outputRoot;
+    private int classes = 100;
+    private int methods = 10;
+    private int ifs = 5;
+    private int operands = 3;
+    private int depth = 1;
+    private int predicates = 2;
+    private int classesPerPackage = 100;
+    private long seed = 42;
+
+    public static void main(String[] args) {
+
+        CorpusGenerator generator;
+
+        try {
+            generator = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        long start = System.nanoTime();
+        long lines = generator.writeCorpus();
+
+        System.out.printf("Generated %d classes, %d lines in %.1f s under %s%n",
+                generator.classes, lines, (System.nanoTime() - start) / 1e9, generator.outputRoot);
+    }
+
+    /**
+     * Parses command line arguments, see {@link #USAGE}
+     * @param args command line arguments
+     */
+    public static CorpusGenerator parse(String[] args){
+
+        CorpusGenerator generator = new CorpusGenerator();
+
+        for(int i = 0; i < args.length; i++){
+            switch (args[i]) {
+                case "--out" -> generator.outputRoot = Path.of(value(args, ++i));
+                case "--classes" -> generator.classes = Integer.parseInt(value(args, ++i));
+                case "--methods" -> generator.methods = Integer.parseInt(value(args, ++i));
+                case "--ifs" -> generator.ifs = Integer.parseInt(value(args, ++i));
+                case "--operands" -> generator.operands = Integer.parseInt(value(args, ++i));
+                case "--depth" -> generator.depth = Integer.parseInt(value(args, ++i));
+                case "--predicates" -> generator.predicates = Integer.parseInt(value(args, ++i));
+                case "--per-package" -> generator.classesPerPackage = Integer.parseInt(value(args, ++i));
+                case "--seed" -> generator.seed = Long.parseLong(value(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        if(generator.outputRoot == null){
+            throw new IllegalArgumentException("--out is required");
+        }
+
+        if(generator.operands < 1 || generator.depth < 1 || generator.classesPerPackage < 1){
+            throw new IllegalArgumentException("--operands, --depth and --per-package must be positive");
+        }
+
+        return generator;
+    }
+
+    private static String value(String[] args, int index){
+
+        if(index >= args.length){
+            throw new IllegalArgumentException("Missing value for option: " + args[index - 1]);
+        }
+
+        return args[index];
+    }
+
+    public CorpusGenerator withMethods(int methods) {
+        this.methods = methods;
+        return this;
+    }
+
+    public CorpusGenerator withIfs(int ifs) {
+        this.ifs = ifs;
+        return this;
+    }
+
+    public CorpusGenerator withOperands(int operands) {
+        this.operands = operands;
+        return this;
+    }
+
+    public CorpusGenerator withDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public CorpusGenerator withPredicates(int predicates) {
+        this.predicates = predicates;
+        return this;
+    }
+
+    public CorpusGenerator withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes all classes under the output root
+     * @return number of generated lines
+     */
+    public long writeCorpus(){
+
+        long lines = 0;
+
+        try {
+            for(int index = 0; index < classes; index++){
+
+                Path file = outputRoot.resolve(packageName(index).replace('.', '/')).resolve(className(index) + ".java");
+                Files.createDirectories(file.getParent());
+
+                String source = generateClass(index);
+
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    writer.write(source);
+                }
+
+                lines += source.lines().count();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Generates single class of the corpus
+     * @param index index of the class
+     */
+    public String generateClass(int index){
+
+        Random random = new Random(seed * 31 + index);
+        StringBuilder source = new StringBuilder();
+
+        source.append("package ").append(packageName(index)).append(";\n\n")
+                .append("public class ").append(className(index)).append(" {\n\n")
+                .append(INDENT).append("private int counter;\n");
+
+        for(int m = 0; m < methods; m++){
+            appendMethod(source, random, m);
+        }
+
+        for(int p = 1; p <= predicates; p++){
+            appendPredicate(source, random, p);
+        }
+
+        return source.append("}\n").toString();
+    }
+
+    private void appendMethod(StringBuilder source, Random random, int index){
+
+        source.append('\n').append(INDENT)
+                .append("public int method").append(index).append("(int a, int b, boolean flag, String text) {\n")
+                .append(INDENT).append(INDENT).append("int local = a + ").append(random.nextInt(100)).append(";\n");
+
+        for(int i = 0; i < ifs; i++){
+            appendIf(source, random, 2, depth);
+        }
+
+        source.append(INDENT).append(INDENT).append("return local;\n")
+                .append(INDENT).append("}\n");
+    }
+
+    private void appendIf(StringBuilder source, Random random, int indent, int remainingDepth){
+
+        String prefix = INDENT.repeat(indent);
+
+        source.append(prefix).append("if (").append(condition(random)).append(") {\n");
+
+        if(remainingDepth > 1){
+            appendIf(source, random, indent + 1, remainingDepth - 1);
+        }
+
+        source.append(prefix).append(INDENT).append("local += ").append(random.nextInt(10)).append(";\n")
+                .append(prefix).append("}\n");
+    }
+
+    private String condition(Random random){
+
+        StringBuilder condition = new StringBuilder(operand(random));
+
+        for(int i = 1; i < operands; i++){
+            condition.append(random.nextBoolean() ? " && " : " || ").append(operand(random));
+        }
+
+        return condition.toString();
+    }
+
+    private String operand(Random random){
+
+        int kind = random.nextInt(predicates > 0 ? 5 : 4);
+
+        return switch (kind) {
+            case 0 -> "a " + COMPARISONS[random.nextInt(COMPARISONS.length)] + " " + random.nextInt(100);
+            case 1 -> "local " + COMPARISONS[random.nextInt(COMPARISONS.length)] + " b";
+            case 2 -> random.nextBoolean() ? "flag" : "!flag";
+            case 3 -> "text.length() > " + random.nextInt(20);
+            default -> "boolFunction" + (random.nextInt(predicates) + 1) + "(a, b)";
+        };
+    }
+
+    private void appendPredicate(StringBuilder source, Random random, int index){
+
+        source.append('\n').append(INDENT)
+                .append("private boolean boolFunction").append(index).append("(int a, int b) {\n")
+                .append(INDENT).append(INDENT).append("return a ").append(COMPARISONS[random.nextInt(COMPARISONS.length)])
+                .append(' ').append(random.nextInt(100)).append(" && b != a;\n")
+                .append(INDENT).append("}\n");
+    }
+
+    private String packageName(int index){
+        return "corpus.p" + index / classesPerPackage;
+    }
+
+    private static String className(int index){
+        return "Generated" + index;
+    }
+}
@@ -0,0 +1,686 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.RuntimeMetaData;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNConfig;
+import org.antlr.v4.runtime.atn.ATNConfigSet;
+import org.antlr.v4.runtime.atn.ATNSimulator;
+import org.antlr.v4.runtime.atn.ArrayPredictionContext;
+import org.antlr.v4.runtime.atn.EmptyPredictionContext;
+import org.antlr.v4.runtime.atn.PredictionContext;
+import org.antlr.v4.runtime.atn.SemanticContext;
+import org.antlr.v4.runtime.atn.SingletonPredictionContext;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.dfa.DFAState;
+import pl.com.example.grammar.JavaParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves DFA states learned by {@link JavaParser} to a binary file and restores
+ * them on the next start, so short runs skip most of the ATN simulation warm-up.
+ * Snapshot is bound to the serialized ATN of the generated parser and ANTLR runtime version,
+ * regenerating the grammar invalidates it.
+ */
+public class DfaSnapshot {
+
+    private static final int MAGIC = 0x52444641;
+    private static final int FORMAT_VERSION = 1;
+    private static final int ERROR_STATE = -1;
+    private static final int NO_STATE = -2;
+
+    private static final byte CONTEXT_EMPTY = 0;
+    private static final byte CONTEXT_SINGLETON = 1;
+    private static final byte CONTEXT_ARRAY = 2;
+
+    private static final byte SEMANTIC_NONE = 0;
+    private static final byte SEMANTIC_PREDICATE = 1;
+    private static final byte SEMANTIC_PRECEDENCE = 2;
+    private static final byte SEMANTIC_AND = 3;
+    private static final byte SEMANTIC_OR = 4;
+
+    private static final Field CONFLICTING_ALTS_FIELD = conflictingAltsField();
+
+    private DfaSnapshot() {
+    }
+
+    /**
+     * Writes current states of the shared parser DFA. Must not run concurrently with parsing
+     * @param file snapshot file, replaced atomically
+     */
+    public static void save(Path file){
+
+        DFA[] decisions = ParserPool.sharedParserDfa();
+        Map<PredictionContext, Integer> contextIds = new IdentityHashMap<>();
+        List<PredictionContext> contexts = new ArrayList<>();
+        List<List<DFAState>> statesPerDecision = new ArrayList<>();
+
+        for(DFA dfa : decisions){
+            List<DFAState> states = collectStates(dfa);
+            statesPerDecision.add(states);
+
+            for(DFAState state : states){
+                for(ATNConfig config : state.configs.elements()){
+                    collectContexts(config.context, contextIds, contexts);
+                }
+            }
+        }
+
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.write(grammarHash());
+
+                writeContexts(out, contexts, contextIds);
+
+                out.writeInt(decisions.length);
+
+                for(int i = 0; i < decisions.length; i++){
+                    writeDecision(out, decisions[i], statesPerDecision.get(i), contextIds);
+                }
+            }
+
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Restores parser DFA from the snapshot. Must run before any parsing starts.
+     * The whole file is read before any state is installed, so a corrupt or truncated
+     * snapshot leaves the DFA untouched
+     * @param file snapshot file
+     * @return false when the file is missing, corrupt or was written for a different grammar
+     */
+    public static boolean load(Path file){
+
+        if(!Files.isRegularFile(file)){
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            byte[] hash = grammarHash();
+            byte[] storedHash = new byte[hash.length];
+
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+                return false;
+            }
+
+            in.readFully(storedHash);
+
+            if(!Arrays.equals(hash, storedHash)){
+                return false;
+            }
+
+            PredictionContext[] contexts = readContexts(in);
+            DFA[] decisions = ParserPool.sharedParserDfa();
+
+            if(in.readInt() != decisions.length){
+                return false;
+            }
+
+            List<StoredDecision> stored = new ArrayList<>(decisions.length);
+
+            for(int i = 0; i < decisions.length; i++){
+                stored.add(readDecision(in, contexts));
+            }
+
+            for(int i = 0; i < decisions.length; i++){
+                stored.get(i).install(decisions[i]);
+            }
+
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // truncated or malformed, e.g. an id out of range
+            System.err.println("DFA snapshot " + file + " is corrupt, ignoring it: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Hash of everything the DFA depends on: parser ATN, ANTLR runtime and snapshot format
+     */
+    static byte[] grammarHash(){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(JavaParser._serializedATN.getBytes(StandardCharsets.UTF_8));
+            digest.update(RuntimeMetaData.VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) FORMAT_VERSION);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Lists states of the decision together with states reachable only through edges
+     */
+    private static List<DFAState> collectStates(DFA dfa){
+
+        List<DFAState> states;
+
+        synchronized (dfa.states) {
+            states = new ArrayList<>(dfa.states.values());
+        }
+
+        Map<DFAState, Boolean> seen = new IdentityHashMap<>();
+        states.forEach(state -> seen.put(state, true));
+
+        Deque<DFAState> pending = new ArrayDeque<>(states);
+
+        if(dfa.isPrecedenceDfa() && dfa.s0 != null){
+            pending.add(dfa.s0);
+        }
+
+        while(!pending.isEmpty()){
+            DFAState state = pending.poll();
+
+            if(state.edges == null){
+                continue;
+            }
+
+            for(DFAState target : state.edges){
+                if(target != null && target != ATNSimulator.ERROR && seen.put(target, true) == null){
+                    states.add(target);
+                    pending.add(target);
+                }
+            }
+        }
+
+        return states;
+    }
+
+    /**
+     * Assigns ids to context graph nodes so that parents always precede their children
+     */
+    private static void collectContexts(
+            PredictionContext root,
+            Map<PredictionContext, Integer> contextIds,
+            List<PredictionContext> contexts
+    ){
+
+        Deque<PredictionContext> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while(!stack.isEmpty()){
+
+            PredictionContext context = stack.peek();
+
+            if(contextIds.containsKey(context)){
+                stack.pop();
+                continue;
+            }
+
+            boolean parentsReady = true;
+
+            for(int i = 0; i < context.size(); i++){
+                PredictionContext parent = context.getParent(i);
+
+                if(parent != null && !contextIds.containsKey(parent)){
+                    stack.push(parent);
+                    parentsReady = false;
+                }
+            }
+
+            if(parentsReady){
+                stack.pop();
+                contextIds.put(context, contexts.size());
+                contexts.add(context);
+            }
+        }
+    }
+
+    private static void writeContexts(
+            DataOutputStream out,
+            List<PredictionContext> contexts,
+            Map<PredictionContext, Integer> contextIds
+    ) throws IOException {
+
+        out.writeInt(contexts.size());
+
+        for(PredictionContext context : contexts){
+
+            if(context instanceof EmptyPredictionContext){
+                out.writeByte(CONTEXT_EMPTY);
+            }
+            else if(context instanceof SingletonPredictionContext singleton){
+                out.writeByte(CONTEXT_SINGLETON);
+                out.writeInt(contextId(singleton.parent, contextIds));
+                out.writeInt(singleton.returnState);
+            }
+            else {
+                ArrayPredictionContext array = (ArrayPredictionContext) context;
+                out.writeByte(CONTEXT_ARRAY);
+                out.writeInt(array.size());
+
+                for(int i = 0; i < array.size(); i++){
+                    out.writeInt(contextId(array.parents[i], contextIds));
+                    out.writeInt(array.returnStates[i]);
+                }
+            }
+        }
+    }
+
+    private static int contextId(PredictionContext context, Map<PredictionContext, Integer> contextIds){
+        return context == null ? -1 : contextIds.get(context);
+    }
+
+    private static PredictionContext[] readContexts(DataInputStream in) throws IOException {
+
+        PredictionContext[] contexts = new PredictionContext[in.readInt()];
+
+        for(int i = 0; i < contexts.length; i++){
+            byte kind = in.readByte();
+
+            if(kind == CONTEXT_EMPTY){
+                contexts[i] = EmptyPredictionContext.Instance;
+            }
+            else if(kind == CONTEXT_SINGLETON){
+                PredictionContext parent = contextById(contexts, in.readInt());
+                contexts[i] = SingletonPredictionContext.create(parent, in.readInt());
+            }
+            else {
+                int size = in.readInt();
+                PredictionContext[] parents = new PredictionContext[size];
+                int[] returnStates = new int[size];
+
+                for(int j = 0; j < size; j++){
+                    parents[j] = contextById(contexts, in.readInt());
+                    returnStates[j] = in.readInt();
+                }
+
+                contexts[i] = new ArrayPredictionContext(parents, returnStates);
+            }
+        }
+
+        return contexts;
+    }
+
+    private static PredictionContext contextById(PredictionContext[] contexts, int id){
+        return id < 0 ? null : contexts[id];
+    }
+
+    private static void writeDecision(
+            DataOutputStream out,
+            DFA dfa,
+            List<DFAState> states,
+            Map<PredictionContext, Integer> contextIds
+    ) throws IOException {
+
+        Map<DFAState, Integer> stateIds = new IdentityHashMap<>();
+
+        for(int i = 0; i < states.size(); i++){
+            stateIds.put(states.get(i), i);
+        }
+
+        out.writeBoolean(dfa.isPrecedenceDfa());
+        out.writeInt(states.size());
+
+        for(DFAState state : states){
+            writeState(out, state, contextIds);
+        }
+
+        for(DFAState state : states){
+            writeEdges(out, state.edges, stateIds);
+        }
+
+        if(dfa.isPrecedenceDfa()){
+            writeEdges(out, dfa.s0.edges, stateIds);
+        }
+        else {
+            out.writeInt(dfa.s0 == null ? NO_STATE : stateIds.get(dfa.s0));
+        }
+    }
+
+    private static StoredDecision readDecision(DataInputStream in, PredictionContext[] contexts) throws IOException {
+
+        boolean precedence = in.readBoolean();
+        DFAState[] states = new DFAState[in.readInt()];
+
+        for(int i = 0; i < states.length; i++){
+            states[i] = readState(in, contexts);
+        }
+
+        for(DFAState state : states){
+            state.edges = readEdges(in, states);
+        }
+
+        DFAState[] precedenceEdges = null;
+        int startState = NO_STATE;
+
+        if(precedence){
+            precedenceEdges = readEdges(in, states);
+        }
+        else {
+            startState = in.readInt();
+        }
+
+        if(startState >= states.length){
+            throw new IOException("Start state " + startState + " out of " + states.length);
+        }
+
+        return new StoredDecision(precedence, states, precedenceEdges, startState);
+    }
+
+    /**
+     * States of one decision read from the snapshot, not yet part of the parser DFA
+     */
+    private static class StoredDecision {
+        private final boolean precedence;
+        private final DFAState[] states;
+        private final DFAState[] precedenceEdges;
+        private final int startState;
+
+        private StoredDecision(boolean precedence, DFAState[] states, DFAState[] precedenceEdges, int startState) {
+            this.precedence = precedence;
+            this.states = states;
+            this.precedenceEdges = precedenceEdges;
+            this.startState = startState;
+        }
+
+        private void install(DFA dfa){
+
+            // a decision already used in this JVM keeps its own states
+            if(precedence != dfa.isPrecedenceDfa() || !dfa.states.isEmpty()){
+                return;
+            }
+
+            synchronized (dfa.states) {
+                for(DFAState state : states){
+                    dfa.states.put(state, state);
+                }
+            }
+
+            if(precedenceEdges != null){
+                for(int i = 0; i < precedenceEdges.length; i++){
+                    if(precedenceEdges[i] != null){
+                        dfa.setPrecedenceStartState(i, precedenceEdges[i]);
+                    }
+                }
+            }
+            else if(startState >= 0){
+                dfa.s0 = states[startState];
+            }
+        }
+    }
+
+    private static void writeState(
+            DataOutputStream out,
+            DFAState state,
+            Map<PredictionContext, Integer> contextIds
+    ) throws IOException {
+
+        ATNConfigSet configs = state.configs;
+
+        out.writeInt(state.stateNumber);
+        out.writeBoolean(state.isAcceptState);
+        out.writeBoolean(state.requiresFullContext);
+        out.writeInt(state.prediction);
+
+        out.writeBoolean(configs.fullCtx);
+        out.writeInt(configs.uniqueAlt);
+        out.writeBoolean(configs.hasSemanticContext);
+        out.writeBoolean(configs.dipsIntoOuterContext);
+        writeBitSet(out, conflictingAlts(configs));
+
+        out.writeInt(configs.size());
+
+        for(ATNConfig config : configs.elements()){
+            out.writeInt(config.state.stateNumber);
+            out.writeInt(config.alt);
+            out.writeInt(contextIds.get(config.context));
+            writeSemanticContext(out, config.semanticContext);
+            out.writeInt(config.reachesIntoOuterContext);
+            out.writeBoolean(config.isPrecedenceFilterSuppressed());
+        }
+
+        if(state.predicates == null){
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(state.predicates.length);
+
+        for(DFAState.PredPrediction predicate : state.predicates){
+            writeSemanticContext(out, predicate.pred);
+            out.writeInt(predicate.alt);
+        }
+    }
+
+    private static DFAState readState(DataInputStream in, PredictionContext[] contexts) throws IOException {
+
+        ATN atn = JavaParser._ATN;
+
+        int stateNumber = in.readInt();
+        boolean isAcceptState = in.readBoolean();
+        boolean requiresFullContext = in.readBoolean();
+        int prediction = in.readInt();
+
+        ATNConfigSet configs = new ATNConfigSet(in.readBoolean());
+        int uniqueAlt = in.readInt();
+        boolean hasSemanticContext = in.readBoolean();
+        boolean dipsIntoOuterContext = in.readBoolean();
+        BitSet conflictingAlts = readBitSet(in);
+
+        int configCount = in.readInt();
+
+        for(int i = 0; i < configCount; i++){
+            ATNConfig config = new ATNConfig(
+                    atn.states.get(in.readInt()),
+                    in.readInt(),
+                    contexts[in.readInt()],
+                    readSemanticContext(in)
+            );
+            config.reachesIntoOuterContext = in.readInt();
+            config.setPrecedenceFilterSuppressed(in.readBoolean());
+            configs.add(config);
+        }
+
+        configs.uniqueAlt = uniqueAlt;
+        configs.hasSemanticContext = hasSemanticContext;
+        configs.dipsIntoOuterContext = dipsIntoOuterContext;
+        setConflictingAlts(configs, conflictingAlts);
+        configs.setReadonly(true);
+
+        DFAState state = new DFAState(configs);
+        state.stateNumber = stateNumber;
+        state.isAcceptState = isAcceptState;
+        state.requiresFullContext = requiresFullContext;
+        state.prediction = prediction;
+
+        int predicateCount = in.readInt();
+
+        if(predicateCount >= 0){
+            state.predicates = new DFAState.PredPrediction[predicateCount];
+
+            for(int i = 0; i < predicateCount; i++){
+                state.predicates[i] = new DFAState.PredPrediction(readSemanticContext(in), in.readInt());
+            }
+        }
+
+        return state;
+    }
+
+    private static void writeEdges(DataOutputStream out, DFAState[] edges, Map<DFAState, Integer> stateIds) throws IOException {
+
+        if(edges == null){
+            out.writeInt(-1);
+            return;
+        }
+
+        int used = 0;
+
+        for(DFAState target : edges){
+            if(target != null){
+                used++;
+            }
+        }
+
+        out.writeInt(edges.length);
+        out.writeInt(used);
+
+        for(int i = 0; i < edges.length; i++){
+            if(edges[i] != null){
+                out.writeInt(i);
+                out.writeInt(edges[i] == ATNSimulator.ERROR ? ERROR_STATE : stateIds.get(edges[i]));
+            }
+        }
+    }
+
+    private static DFAState[] readEdges(DataInputStream in, DFAState[] states) throws IOException {
+
+        int length = in.readInt();
+
+        if(length < 0){
+            return null;
+        }
+
+        DFAState[] edges = new DFAState[length];
+        int used = in.readInt();
+
+        for(int i = 0; i < used; i++){
+            int symbol = in.readInt();
+            int target = in.readInt();
+            edges[symbol] = target == ERROR_STATE ? ATNSimulator.ERROR : states[target];
+        }
+
+        return edges;
+    }
+
+    private static void writeSemanticContext(DataOutputStream out, SemanticContext context) throws IOException {
+
+        if(context instanceof SemanticContext.Predicate predicate){
+            out.writeByte(SEMANTIC_PREDICATE);
+            out.writeInt(predicate.ruleIndex);
+            out.writeInt(predicate.predIndex);
+            out.writeBoolean(predicate.isCtxDependent);
+        }
+        else if(context instanceof SemanticContext.PrecedencePredicate precedence){
+            out.writeByte(SEMANTIC_PRECEDENCE);
+            out.writeInt(precedence.precedence);
+        }
+        else if(context instanceof SemanticContext.Operator operator){
+            out.writeByte(context instanceof SemanticContext.AND ? SEMANTIC_AND : SEMANTIC_OR);
+            out.writeInt(operator.getOperands().size());
+
+            for(SemanticContext operand : operator.getOperands()){
+                writeSemanticContext(out, operand);
+            }
+        }
+        else {
+            out.writeByte(SEMANTIC_NONE);
+        }
+    }
+
+    private static SemanticContext readSemanticContext(DataInputStream in) throws IOException {
+
+        byte kind = in.readByte();
+
+        switch (kind) {
+            case SEMANTIC_PREDICATE:
+                return new SemanticContext.Predicate(in.readInt(), in.readInt(), in.readBoolean());
+            case SEMANTIC_PRECEDENCE:
+                return new SemanticContext.PrecedencePredicate(in.readInt());
+            case SEMANTIC_AND:
+            case SEMANTIC_OR:
+                int count = in.readInt();
+                SemanticContext result = readSemanticContext(in);
+
+                for(int i = 1; i < count; i++){
+                    SemanticContext operand = readSemanticContext(in);
+                    result = kind == SEMANTIC_AND
+                            ? new SemanticContext.AND(result, operand)
+                            : new SemanticContext.OR(result, operand);
+                }
+
+                return result;
+            default:
+                return SemanticContext.Empty.Instance;
+        }
+    }
+
+    private static void writeBitSet(DataOutputStream out, BitSet bits) throws IOException {
+
+        if(bits == null){
+            out.writeInt(-1);
+            return;
+        }
+
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+
+        for(long word : words){
+            out.writeLong(word);
+        }
+    }
+
+    private static BitSet readBitSet(DataInputStream in) throws IOException {
+
+        int length = in.readInt();
+
+        if(length < 0){
+            return null;
+        }
+
+        long[] words = new long[length];
+
+        for(int i = 0; i < length; i++){
+            words[i] = in.readLong();
+        }
+
+        return BitSet.valueOf(words);
+    }
+
+    // ATNConfigSet keeps conflicting alternatives in a protected field
+    private static Field conflictingAltsField(){
+        try {
+            Field field = ATNConfigSet.class.getDeclaredField("conflictingAlts");
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static BitSet conflictingAlts(ATNConfigSet configs){
+        try {
+            return (BitSet) CONFLICTING_ALTS_FIELD.get(configs);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void setConflictingAlts(ATNConfigSet configs, BitSet conflictingAlts){
+        try {
+            CONFLICTING_ALTS_FIELD.set(configs, conflictingAlts);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Edits of a token stream kept ordered by token index, a replacement for
+ * {@link org.antlr.v4.runtime.TokenStreamRewriter} whose rendering is quadratic in the number of edits.
+ * <p>
+ * Inserted texts are grouped by the gap before a token, repeated inserts at one place
+ * cost O(1). Replacements never overlap: a replacement containing earlier ones drops them,
+ * overlapping or adjacent deletes of one owner are merged, as {@link org.antlr.v4.runtime.TokenStreamRewriter}
+ * merges overlapping deletes, any other overlap is rejected when the edit is recorded, so rendering is a single pass
+ * over tokens and edits. Texts may be {@link RefactoringPlan.Content}s, they are rendered into the output
+ * by {@link PlanApplier} and go into the plan as they are, any other text is taken by its string form.
+ * <p>
+ * Several refactorings may record edits into one log through views made by {@link #withOwner(String)}.
+ * An edit overlapping an edit of another owner is not applied but reported in {@link #getConflicts()}.
+ */
+public class EditLog {
+
+    private final TokenStream tokens;
+    // gap index i is the place just before token i
+    private final NavigableMap<Integer, Deque<Insert>> inserts;
+    private final NavigableMap<Integer, Replacement> replacements;
+    private final List<String> conflicts;
+    private final String owner;
+
+    public EditLog(TokenStream tokens) {
+        this(tokens, new TreeMap<>(), new TreeMap<>(), new ArrayList<>(), null);
+    }
+
+    private EditLog(
+            TokenStream tokens,
+            NavigableMap<Integer, Deque<Insert>> inserts,
+            NavigableMap<Integer, Replacement> replacements,
+            List<String> conflicts,
+            String owner
+    ) {
+        this.tokens = tokens;
+        this.inserts = inserts;
+        this.replacements = replacements;
+        this.conflicts = conflicts;
+        this.owner = owner;
+    }
+
+    /**
+     * View of this log recording edits on behalf of owner, views share all edits
+     * @param owner name of the refactoring making the edits
+     */
+    public EditLog withOwner(String owner){
+        return new EditLog(tokens, inserts, replacements, conflicts, owner);
+    }
+
+    /**
+     * Descriptions of edits rejected because they overlapped edits of another owner
+     */
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+
+    public TokenStream getTokenStream() {
+        return tokens;
+    }
+
+    /**
+     * Inserts text before the token, ahead of texts inserted there earlier
+     * @return false when the insert conflicts with another owner's replacement
+     */
+    public boolean insertBefore(int index, Object text){
+
+        if(!checkNotReplaced(index)){
+            return false;
+        }
+
+        inserts.computeIfAbsent(index, key -> new ArrayDeque<>()).addFirst(new Insert(owner, text));
+        return true;
+    }
+
+    public boolean insertBefore(Token token, Object text){
+        return insertBefore(token.getTokenIndex(), text);
+    }
+
+    /**
+     * Inserts text after the token, behind texts inserted there earlier
+     * @return false when the insert conflicts with another owner's replacement
+     */
+    public boolean insertAfter(int index, Object text){
+
+        if(!checkNotReplaced(index + 1)){
+            return false;
+        }
+
+        inserts.computeIfAbsent(index + 1, key -> new ArrayDeque<>()).addLast(new Insert(owner, text));
+        return true;
+    }
+
+    public boolean insertAfter(Token token, Object text){
+        return insertAfter(token.getTokenIndex(), text);
+    }
+
+    /**
+     * Replaces tokens from..to, both inclusive. Replacements and inserts inside the range
+     * recorded earlier are dropped, text inserted before <code>from</code> is kept.
+     * A delete overlapping or adjacent to deletes of the same owner is merged with them into one
+     * @return false when the range overlaps any edit of another owner, nothing is changed then
+     * @throws IllegalArgumentException when the range partially overlaps earlier replacement
+     * of the same owner or lies within one, unless both are deletes
+     */
+    public boolean replace(int from, int to, Object text){
+
+        if(from > to || from < 0 || to >= tokens.size()){
+            throw new IllegalArgumentException("Invalid token range " + from + ".." + to);
+        }
+
+        if(text == null){
+            Map.Entry<Integer, Replacement> before = replacements.floorEntry(from);
+
+            if(before != null && isMergeableDelete(before.getValue(), before.getValue().to + 1, from)){
+                from = before.getKey();
+                to = Math.max(to, before.getValue().to);
+            }
+
+            Map.Entry<Integer, Replacement> last = replacements.floorEntry(to + 1);
+
+            if(last != null && last.getKey() > from && isMergeableDelete(last.getValue(), to + 1, last.getKey())){
+                to = Math.max(to, last.getValue().to);
+            }
+        }
+
+        String range = from + ".." + to;
+        Map.Entry<Integer, Replacement> before = replacements.floorEntry(from);
+
+        if(before != null && before.getValue().to >= from){
+
+            if(isForeign(before.getValue().owner)){
+                return conflict("Replacement " + range, before.getValue());
+            }
+
+            if(!(before.getKey() == from && before.getValue().to <= to)){
+                throw new IllegalArgumentException("Replacement " + range + " overlaps " + before.getValue());
+            }
+        }
+
+        NavigableMap<Integer, Replacement> contained = replacements.subMap(from, true, to, true);
+
+        for(Replacement replacement : contained.values()){
+
+            if(isForeign(replacement.owner)){
+                return conflict("Replacement " + range, replacement);
+            }
+
+            if(replacement.to > to){
+                throw new IllegalArgumentException("Replacement " + range + " overlaps " + replacement);
+            }
+        }
+
+        NavigableMap<Integer, Deque<Insert>> containedInserts = inserts.subMap(from, false, to, true);
+
+        for(Map.Entry<Integer, Deque<Insert>> gap : containedInserts.entrySet()){
+            for(Insert insert : gap.getValue()){
+                if(isForeign(insert.owner)){
+                    return conflict("Replacement " + range, insert.owner + " insert at " + gap.getKey());
+                }
+            }
+        }
+
+        contained.clear();
+        containedInserts.clear();
+        replacements.put(from, new Replacement(owner, from, to, text));
+
+        return true;
+    }
+
+    public boolean replace(Token from, Token to, Object text){
+        return replace(from.getTokenIndex(), to.getTokenIndex(), text);
+    }
+
+    public boolean delete(int from, int to){
+        return replace(from, to, null);
+    }
+
+    public boolean delete(Token from, Token to){
+        return delete(from.getTokenIndex(), to.getTokenIndex());
+    }
+
+    /**
+     * Checks if the replacement is a delete of this owner touching a range: they overlap
+     * or meet at a gap with nothing inserted
+     * @param lowerEnd token just behind the range lying first
+     * @param upperStart first token of the range lying second
+     */
+    private boolean isMergeableDelete(Replacement replacement, int lowerEnd, int upperStart){
+
+        if(replacement.text != null || isForeign(replacement.owner)){
+            return false;
+        }
+
+        return upperStart < lowerEnd || (upperStart == lowerEnd && !inserts.containsKey(upperStart));
+    }
+
+    private boolean checkNotReplaced(int gap){
+
+        Map.Entry<Integer, Replacement> replacement = replacements.lowerEntry(gap);
+
+        if(replacement == null || replacement.getValue().to < gap){
+            return true;
+        }
+
+        if(isForeign(replacement.getValue().owner)){
+            return conflict("Insert at " + gap, replacement.getValue());
+        }
+
+        throw new IllegalArgumentException("Insert at " + gap + " within " + replacement.getValue());
+    }
+
+    private boolean isForeign(String editOwner){
+        return !Objects.equals(owner, editOwner);
+    }
+
+    private boolean conflict(String edit, Object existing){
+
+        conflicts.add(owner + " " + edit + " overlaps " + existing);
+        return false;
+    }
+
+    public boolean isEmpty(){
+        return inserts.isEmpty() && replacements.isEmpty();
+    }
+
+    /**
+     * Writes the edited token stream in one pass
+     * @param writer output, not closed
+     */
+    public void writeTo(Writer writer) throws IOException {
+
+        Iterator<Map.Entry<Integer, Deque<Insert>>> pendingInserts = inserts.entrySet().iterator();
+        Map.Entry<Integer, Deque<Insert>> insert = pendingInserts.hasNext() ? pendingInserts.next() : null;
+        int size = tokens.size();
+        int i = 0;
+
+        while(i < size){
+
+            while(insert != null && insert.getKey() <= i){
+                writeAll(writer, insert.getValue());
+                insert = pendingInserts.hasNext() ? pendingInserts.next() : null;
+            }
+
+            Replacement replacement = replacements.get(i);
+
+            if(replacement != null){
+                write(writer, replacement.text);
+                i = replacement.to + 1;
+                continue;
+            }
+
+            Token token = tokens.get(i);
+
+            if(token.getType() != Token.EOF){
+                writer.write(token.getText());
+            }
+            i++;
+        }
+
+        // inserted after the last token
+        while(insert != null){
+            writeAll(writer, insert.getValue());
+            insert = pendingInserts.hasNext() ? pendingInserts.next() : null;
+        }
+    }
+
+    /**
+     * Snapshot of the edits as code point ranges of the source, in the order {@link #writeTo(Writer)}
+     * renders them; contents are not rendered, see {@link PlanApplier}
+     */
+    public RefactoringPlan toPlan(){
+
+        List<RefactoringPlan.Edit> edits = new ArrayList<>(replacements.size() + inserts.size());
+        Iterator<Map.Entry<Integer, Replacement>> pendingReplacements = replacements.entrySet().iterator();
+        Map.Entry<Integer, Replacement> replacement = pendingReplacements.hasNext() ? pendingReplacements.next() : null;
+
+        for(Map.Entry<Integer, Deque<Insert>> insert : inserts.entrySet()){
+
+            // replacements up to the gap go first, text inserted behind one is rendered after it
+            while(replacement != null && replacement.getKey() < insert.getKey()){
+                addReplacement(edits, replacement.getValue());
+                replacement = pendingReplacements.hasNext() ? pendingReplacements.next() : null;
+            }
+
+            int offset = startOf(insert.getKey());
+
+            for(Insert text : insert.getValue()){
+                if(text.text != null){
+                    edits.add(new RefactoringPlan.Edit(RefactoringPlan.Kind.INSERT, text.owner, offset, offset, content(text.text)));
+                }
+            }
+        }
+
+        while(replacement != null){
+            addReplacement(edits, replacement.getValue());
+            replacement = pendingReplacements.hasNext() ? pendingReplacements.next() : null;
+        }
+
+        int size = tokens.size() == 0 ? 0 : startOf(tokens.size());
+        return new RefactoringPlan(tokens.getSourceName(), size, edits);
+    }
+
+    private void addReplacement(List<RefactoringPlan.Edit> edits, Replacement replacement){
+
+        int start = startOf(replacement.from);
+        Token last = tokens.get(replacement.to);
+        // EOF takes no text
+        int end = last.getType() == Token.EOF ? last.getStartIndex() : last.getStopIndex() + 1;
+
+        if(start == end){
+            if(replacement.text != null){
+                edits.add(new RefactoringPlan.Edit(RefactoringPlan.Kind.INSERT, replacement.owner, start, end, content(replacement.text)));
+            }
+        }
+        else if(replacement.text == null){
+            edits.add(new RefactoringPlan.Edit(RefactoringPlan.Kind.DELETE, replacement.owner, start, end, null));
+        }
+        else {
+            edits.add(new RefactoringPlan.Edit(RefactoringPlan.Kind.REPLACE, replacement.owner, start, end, content(replacement.text)));
+        }
+    }
+
+    private static RefactoringPlan.Content content(Object text){
+        return text instanceof RefactoringPlan.Content content ? content : new RefactoringPlan.Text(text.toString());
+    }
+
+    /**
+     * Code point the gap before token is at, the gap behind the last token is at the end of the source
+     */
+    private int startOf(int gap){
+
+        Token token = tokens.get(Math.min(gap, tokens.size() - 1));
+        return gap < tokens.size() ? token.getStartIndex() : Math.max(token.getStopIndex() + 1, token.getStartIndex());
+    }
+
+    public String getText(){
+
+        StringWriter writer = new StringWriter();
+
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return writer.toString();
+    }
+
+    private void writeAll(Writer writer, Iterable<Insert> inserts) throws IOException {
+        for(Insert insert : inserts){
+            write(writer, insert.text);
+        }
+    }
+
+    private void write(Writer writer, Object text) throws IOException {
+
+        if(text instanceof RefactoringPlan.Content content){
+            PlanApplier.write(content, tokens.getTokenSource().getInputStream(), writer);
+        }
+        else if(text != null){
+            writer.write(text.toString());
+        }
+    }
+
+    private static class Insert {
+        private final String owner;
+        private final Object text;
+
+        private Insert(String owner, Object text) {
+            this.owner = owner;
+            this.text = text;
+        }
+    }
+
+    private static class Replacement {
+        private final String owner;
+        private final int from;
+        private final int to;
+        private final Object text;
+
+        private Replacement(String owner, int from, int to, Object text) {
+            this.owner = owner;
+            this.from = from;
+            this.to = to;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return owner == null ? from + ".." + to : owner + " replacement " + from + ".." + to;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import pl.com.example.grammar.JavaParser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Names and literals referenced by an expression, collected in a single pass over its parse tree.
+ * Only identifiers standing as a primary are treated as references, so member names after a dot,
+ * invoked method names, types of casts and creators and lambda parameters are never reported.
+ */
+public class ExpressionVariables {
+
+    private final Set<String> names = new LinkedHashSet<>();
+    private final Set<String> qualifiedRoots = new LinkedHashSet<>();
+    private final List<String> literals = new ArrayList<>();
+    private final Set<String> lambdaParameters = new LinkedHashSet<>();
+
+    private ExpressionVariables() {
+    }
+
+    /**
+     * Collects references of the expression in source order
+     * @param expression expression subtree
+     */
+    public static ExpressionVariables collect(JavaParser.ExpressionContext expression){
+
+        ExpressionVariables variables = new ExpressionVariables();
+        variables.visit(expression);
+        variables.names.removeAll(variables.lambdaParameters);
+        variables.qualifiedRoots.removeAll(variables.lambdaParameters);
+
+        return variables;
+    }
+
+    /**
+     * Visits the subtree in source order with an explicit stack, long chains of operators
+     * give trees deeper than the thread stack
+     */
+    private void visit(ParseTree root){
+
+        Deque<ParseTree> pending = new ArrayDeque<>();
+        pending.push(root);
+
+        while(!pending.isEmpty()){
+
+            ParseTree node = pending.pop();
+
+            if(node instanceof JavaParser.PrimaryContext primary){
+                visitPrimary(primary, pending);
+                continue;
+            }
+
+            if(node instanceof JavaParser.LambdaParametersContext parameters){
+                collectLambdaParameters(parameters);
+                continue;
+            }
+
+            if(node instanceof JavaParser.TypeTypeContext || node instanceof JavaParser.ClassTypeContext){
+                continue;
+            }
+
+            for(int i = node.getChildCount() - 1; i >= 0; i--){
+                pending.push(node.getChild(i));
+            }
+        }
+    }
+
+    private void visitPrimary(JavaParser.PrimaryContext primary, Deque<ParseTree> pending){
+
+        if(primary.identifier() != null){
+            String name = primary.identifier().getText();
+            names.add(name);
+
+            if(isQualifierOfMemberAccess(primary)){
+                qualifiedRoots.add(name);
+            }
+
+            return;
+        }
+
+        if(primary.literal() != null){
+            literals.add(primary.literal().getText());
+            return;
+        }
+
+        if(primary.expression() != null){
+            pending.push(primary.expression());
+        }
+    }
+
+    /**
+     * Checks if primary is the left side of <code>expression '.' member</code>
+     */
+    private static boolean isQualifierOfMemberAccess(JavaParser.PrimaryContext primary){
+
+        if(!(primary.getParent() instanceof JavaParser.ExpressionContext operand)){
+            return false;
+        }
+
+        if(!(operand.getParent() instanceof JavaParser.ExpressionContext access)){
+            return false;
+        }
+
+        return access.bop != null && access.bop.getType() == JavaParser.DOT && access.getChild(0) == operand;
+    }
+
+    private void collectLambdaParameters(JavaParser.LambdaParametersContext parameters){
+
+        for(JavaParser.IdentifierContext identifier : parameters.identifier()){
+            lambdaParameters.add(identifier.getText());
+        }
+
+        if(parameters.formalParameterList() != null){
+            for(var parameter : parameters.formalParameterList().formalParameter()){
+                lambdaParameters.add(parameter.variableDeclaratorId().identifier().getText());
+            }
+        }
+
+        if(parameters.lambdaLVTIList() != null){
+            for(var parameter : parameters.lambdaLVTIList().lambdaLVTIParameter()){
+                lambdaParameters.add(parameter.identifier().getText());
+            }
+        }
+    }
+
+    /**
+     * Distinct names referenced directly or as the root of member access, in source order
+     */
+    public List<String> getNames() {
+        return List.copyOf(names);
+    }
+
+    /**
+     * Distinct names used as roots of qualified access like <code>root.member</code>
+     */
+    public Set<String> getQualifiedRoots() {
+        return Collections.unmodifiableSet(qualifiedRoots);
+    }
+
+    /**
+     * Literal values in source order
+     */
+    public List<String> getLiterals() {
+        return Collections.unmodifiableList(literals);
+    }
+}
@@ -1,116 +1,104 @@
 package pl.com.example;
 
 import org.antlr.v4.runtime.*;
-import org.stringtemplate.v4.ST;
 import pl.com.example.grammar.JavaParser;
-import pl.com.example.grammar.JavaParserBaseListener;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
-public class ExtractBoolStatementsListener extends JavaParserBaseListener {
+public class ExtractBoolStatementsListener extends SymbolTrackingListener implements RefactoringListener {
 
-    private static final String LOG_OP_REGEX = "\\&\\&|\\|\\|";
-    //TODO: ten regex jeszcze czhyba do zgeneralizowania
-    private static final String STATEMENTS_WITHOUT_LOG_OP_REGEX = "(?<=^|[\\s&|^!]|(==)|(=>)|(<=)|(!=)|[><])([_a-zA-Z\"'][_a-zA-Z0-9\\.()\"']*)(?=[\\s&|^!]|(==)|(=>)|(<=)|(!=)|[><=]|$)";
-    private static final String STRING_OR_CHAR_REGEX = "^(('[^']*'$)|(\"[^\"]*\"))";
-    private static final String THIS_STRING = "this";
     private static final int IF_TOKEN = 22;
     private static final int STATIC_TOKEN = 38;
-    private static final String LINE = "line";
-    public TokenStreamRewriter rewriter;
+    private static final String PRIVATE = "private";
+    private static final String STATIC = "static";
+    public EditLog rewriter;
     private final int expandedEnoughExpressionIdentifier;
-    private Integer insertIndex = null;
+    // methods extracted from a member, inserted behind it once it is exited
+    private final Map<ParserRuleContext, List<RefactoringPlan.ExtractedMethod>> pendingMethods = new HashMap<>();
+    // methods of class bodies walked, to keep generated names apart from declared ones
+    private final Map<JavaParser.ClassBodyContext, MethodIndex> classBodies = new HashMap<>();
+    // every identifier of the file, for members walked without their class body, e.g. while streaming
+    private Set<String> fileIdentifiers;
     private int functionCounter = 1;
-    private final LocalSymbols symbols;
-    private boolean isStatic = false;
-
-    private List<String> statementsFromExpressionList;
+    private int ifStatementCount = 0;
+    private int extractedCount = 0;
 
     public ExtractBoolStatementsListener(
             CommonTokenStream commonTokenStream,
             int expandedEnoughExpressionIdentifier
     ){
-        rewriter = new TokenStreamRewriter(commonTokenStream);
-        this.expandedEnoughExpressionIdentifier = expandedEnoughExpressionIdentifier;
-        this.symbols = new LocalSymbols();
+        this(new EditLog(commonTokenStream), new LocalSymbols(), expandedEnoughExpressionIdentifier);
     }
 
     /**
-     * Checks if method is static
-     * @param ctx the parse tree
+     * @param rewriter edit log, possibly shared with other refactorings
+     * @param symbols symbol table, read-only view when it is maintained by someone else
+     * @param expandedEnoughExpressionIdentifier operands needed to extract the condition
      */
-    @Override
-    public void enterClassBodyDeclaration(JavaParser.ClassBodyDeclarationContext ctx) {
-
-        super.enterClassBodyDeclaration(ctx);
-
-        this.isStatic = false;
-
-        for(var identifier : ctx.modifier()){
-            if(identifier.classOrInterfaceModifier().start.getType() == STATIC_TOKEN){
-                this.isStatic = true;
-                break;
-            }
-        }
+    public ExtractBoolStatementsListener(
+            EditLog rewriter,
+            LocalSymbols symbols,
+            int expandedEnoughExpressionIdentifier
+    ){
+        super(symbols);
+        this.rewriter = rewriter;
+        this.expandedEnoughExpressionIdentifier = expandedEnoughExpressionIdentifier;
     }
 
-    /**
-     * Clears symbols and collect arguments passed to this function
-     * @param ctx the parse tree
-     */
     @Override
-    public void enterMethodDeclaration(JavaParser.MethodDeclarationContext ctx) {
-
-        super.enterMethodDeclaration(ctx);
-
-        this.symbols.clearSymbols();
-
-        if(ctx.formalParameters().formalParameterList() == null
-                || ctx.formalParameters().formalParameterList().isEmpty()
-        ){
-            return;
-        }
-
-        List<JavaParser.FormalParameterContext> parameters = ctx.formalParameters().formalParameterList().formalParameter();
+    public EditLog getRewriter() {
+        return rewriter;
+    }
 
-        for(var parameter : parameters){
-            this.symbols.addSymbol(parameter.variableDeclaratorId().getText(), parameter.typeType().getText());
-        }
+    @Override
+    public int getIfStatementCount() {
+        return ifStatementCount;
+    }
 
+    @Override
+    public int getAppliedCount() {
+        return extractedCount;
     }
 
-    /**
-     * Calculates boolean function index
-     * @param ctx the parse tree
-     */
     @Override
-    public void enterMethodBody(JavaParser.MethodBodyContext ctx) {
+    public void enterClassBody(JavaParser.ClassBodyContext ctx) {
+        classBodies.put(ctx, MethodIndex.of(ctx));
+    }
 
-        super.enterMethodBody(ctx);
+    @Override
+    public void exitClassBody(JavaParser.ClassBodyContext ctx) {
+        classBodies.remove(ctx);
+    }
 
-        if(insertIndex == null || ctx.stop.getTokenIndex() != insertIndex){
-            insertIndex = ctx.stop.getTokenIndex();
-        }
+    @Override
+    public void exitClassBodyDeclaration(JavaParser.ClassBodyDeclarationContext ctx) {
+        insertPendingMethods(ctx);
+    }
 
+    @Override
+    public void exitInterfaceBodyDeclaration(JavaParser.InterfaceBodyDeclarationContext ctx) {
+        insertPendingMethods(ctx);
     }
 
     /**
-     * Add local variable to symbols
-     * @param ctx the parse tree
+     * Inserts methods extracted from the member just behind it, in the order they were extracted
+     * @param member class or interface body declaration, its stop token is known on exit, also while streaming
      */
-    @Override
-    public void enterLocalVariableDeclaration(JavaParser.LocalVariableDeclarationContext ctx) {
+    private void insertPendingMethods(ParserRuleContext member){
 
-        super.enterLocalVariableDeclaration(ctx);
+        List<RefactoringPlan.ExtractedMethod> methods = pendingMethods.remove(member);
 
-        var variables = ctx.variableDeclarators().variableDeclarator();
+        if(methods == null){
+            return;
+        }
 
-        for(var variable : variables){
-            this.symbols.addSymbol(variable.variableDeclaratorId().getText(), ctx.typeType().getText());
+        for(RefactoringPlan.ExtractedMethod method : methods){
+            rewriter.insertAfter(member.stop, method);
         }
     }
 
@@ -126,213 +114,220 @@ public class ExtractBoolStatementsListener extends JavaParserBaseListener {
             return;
         }
 
-        if(!isExpandedEnough(ctx.expression().getText())){
+        ifStatementCount++;
+
+        if(!isExpandedEnough(ctx.expression())){
             return;
         }
 
-        String functionName = createFunctionName();
-        ST boolMethod = createMethodST(functionName, ctx.expression().getText());
+        List<String> arguments = getArgumentsFromExpression(ExpressionVariables.collect(ctx.expression()));
 
-        String methodInvocation = createMethodInvocationString(functionName);
+        // a local the extracted method could not declare as parameter
+        if(arguments == null){
+            return;
+        }
 
-        rewriter.insertAfter(insertIndex, boolMethod.render());
-        rewriter.replace(ctx.expression().start, ctx.expression().stop, methodInvocation);
-    }
+        ParserRuleContext member = getEnclosingMember(ctx);
 
-    /**
-     * Checks if met par expression is if statement
-     * @param ctx
-     */
-    private boolean isIfExpression(JavaParser.ParExpressionContext ctx){
-        return ((JavaParser.StatementContext)ctx.parent).start.getType() == IF_TOKEN;
-    }
-
-    /**
-     * Check if met if statement is expanded enough to be extracted to function
-     * @param expression
-     */
-    private boolean isExpandedEnough(String expression){
+        // e.g. within a compact constructor of a record, there is no member to insert the method behind
+        if(member == null){
+            return;
+        }
 
-        String[] splitLogicOperations = expression.split(LOG_OP_REGEX);
+        RefactoringEvents.Extraction event = new RefactoringEvents.Extraction();
+        event.begin();
 
-        this.statementsFromExpressionList = new ArrayList<>(Arrays.asList(splitLogicOperations));
+        String functionName = createFunctionName(member);
 
-        return this.statementsFromExpressionList.size() >= expandedEnoughExpressionIdentifier;
-    }
+        RefactoringPlan.ExtractedMethod boolMethod = createMethod(functionName, ctx.expression(), arguments, isStatic(member));
 
-    /**
-     * Creates boolean function String Template based on functionName and expression
-     * @param functionName
-     * @param expression
-     */
-    private ST createMethodST(String functionName, String expression){
-
-        ST boolMethod = new ST("<line>");
-
-        boolMethod
-                .add(LINE, "\n\n\t")
-                .add(LINE, "private ");
-
-        if(isStatic) {
-            boolMethod.add(LINE, "static ");
+        // condition may be already changed by another refactoring
+        if(!rewriter.replace(ctx.expression().start, ctx.expression().stop, new RefactoringPlan.ExtractedCall(functionName, arguments))){
+            return;
         }
 
-        boolMethod.add(LINE, "boolean " + functionName + "(");
+        pendingMethods.computeIfAbsent(member, key -> new ArrayList<>()).add(boolMethod);
+        functionCounter++;
+        extractedCount++;
 
-        List<String> variablesFromExpression = getValidVariablesListFromExpression();
+        event.end();
 
-        String variableType = null;
-        boolean firstArgumentInserted = false;
+        if(event.shouldCommit()){
+            event.file = rewriter.getTokenStream().getSourceName();
+            event.method = functionName;
+            event.startToken = ctx.expression().start.getTokenIndex();
+            event.stopToken = ctx.expression().stop.getTokenIndex();
+            event.commit();
+        }
+    }
 
-        for(String variable : variablesFromExpression){
+    /**
+     * Finds the member of a class or interface body the expression lies in: method, constructor,
+     * initializer block or field initializer
+     * @return null when the nearest enclosing declaration is not such member
+     */
+    private static ParserRuleContext getEnclosingMember(ParserRuleContext ctx){
 
-            variableType = this.symbols.getSymbol(variable);
+        for(ParserRuleContext node = ctx.getParent(); node != null; node = node.getParent()){
 
-            if(variableType == null){
-                continue;
+            if(node instanceof JavaParser.ClassBodyDeclarationContext
+                    || node instanceof JavaParser.InterfaceBodyDeclarationContext){
+                return node;
             }
 
-            if(!firstArgumentInserted){
-                boolMethod.add(LINE, variableType + " " + variable);
-                firstArgumentInserted = true;
-                continue;
+            if(node instanceof JavaParser.CompactConstructorDeclarationContext){
+                return null;
             }
-
-            boolMethod.add(LINE, ", " + variableType + " " + variable);
-
         }
 
-        boolMethod
-                .add(LINE, "){")
-                .add(LINE, "\n\t\t")
-                .add(LINE, "return ")
-                .add(LINE, expression + ";")
-                .add(LINE, "\n\t}");
-
-        return boolMethod;
+        return null;
     }
 
     /**
-     * Returns list of String containing variables used in if expression
+     * Checks if the member is static: has static modifier or is a static initializer
      */
-    private List<String> getValidVariablesListFromExpression(){
-
-        List<String> validVariables = new ArrayList<>();
-
-        Pattern stringOrCharPattern = Pattern.compile(STRING_OR_CHAR_REGEX);
-        Pattern statementsWithoutLogOpPattern = Pattern.compile(STATEMENTS_WITHOUT_LOG_OP_REGEX);
+    private static boolean isStatic(ParserRuleContext member){
 
-        // statements split by logical operators: "||" or "&&"
-        for(String statement : this.statementsFromExpressionList){
-
-            // trimming unnecessary parentheses
-            String trimmedStatement = trimParenthesesIfExists(statement);
-            Matcher statementsWithoutLogOpMatcher = statementsWithoutLogOpPattern.matcher(trimmedStatement);
-
-            // extracting statements with comparison operators
-            // !=. ==. =>, >, <, <=
-            while(statementsWithoutLogOpMatcher.find()){
-                String pureStatement = statementsWithoutLogOpMatcher.group();
-                Matcher stringOrCharMatcher = stringOrCharPattern.matcher(pureStatement);
+        if(member instanceof JavaParser.ClassBodyDeclarationContext declaration && declaration.STATIC() != null){
+            return true;
+        }
 
-                // if its char or string we skip
-                if(stringOrCharMatcher.find()){
-                    continue;
-                }
+        List<JavaParser.ModifierContext> modifiers = member instanceof JavaParser.ClassBodyDeclarationContext declaration
+                ? declaration.modifier()
+                : ((JavaParser.InterfaceBodyDeclarationContext) member).modifier();
 
-                String[] possibleCascadeFunctionCalls = pureStatement.split("\\.");
+        for(var identifier : modifiers){
+            // native, synchronized, transient and volatile are not class or interface modifiers
+            if(identifier.classOrInterfaceModifier() != null
+                    && identifier.classOrInterfaceModifier().start.getType() == STATIC_TOKEN){
+                return true;
+            }
+        }
 
-                // no cascade reference or invocation -> pure variable name
-                if(possibleCascadeFunctionCalls.length < 2){
+        return false;
+    }
 
-                    // prevents from passing same variable more than once
-                    if(!validVariables.contains(pureStatement)){
-                        validVariables.add(pureStatement);
-                    }
+    /**
+     * Checks if met par expression is if statement
+     * @param ctx
+     */
+    private boolean isIfExpression(JavaParser.ParExpressionContext ctx){
+        return ctx.parent instanceof JavaParser.StatementContext statement && statement.start.getType() == IF_TOKEN;
+    }
 
-                    continue;
-                }
+    /**
+     * Check if met if statement is expanded enough to be extracted to function.
+     * Counts logical operator tokens of the expression, so no text is built
+     * @param expression
+     */
+    private boolean isExpandedEnough(JavaParser.ExpressionContext expression){
 
-                // if first letter of first var is capital, then it is either static
-                // method, or static variable
-                if(Character.isUpperCase(possibleCascadeFunctionCalls[0].charAt(0))){
-                    continue;
-                }
+        TokenStream tokens = rewriter.getTokenStream();
+        int stopIndex = expression.stop.getTokenIndex();
+        int operands = 1;
 
-                // if overriding class variable and reference by "this"
-                // such variable wont be passed as valid local variable
-                if(possibleCascadeFunctionCalls[0].equals(THIS_STRING)){
-                    continue;
-                }
+        for(int i = expression.start.getTokenIndex(); i < stopIndex; i++){
 
-                // prevents from passing same variable more than once
-                if(!validVariables.contains(possibleCascadeFunctionCalls[0])){
-                    validVariables.add(possibleCascadeFunctionCalls[0]);
-                }
+            int type = tokens.get(i).getType();
 
+            if(type == JavaParser.AND || type == JavaParser.OR){
+                operands++;
             }
 
+            if(operands >= expandedEnoughExpressionIdentifier){
+                return true;
+            }
         }
 
-        return validVariables;
+        return operands >= expandedEnoughExpressionIdentifier;
     }
 
-    private String trimParenthesesIfExists(String variable) {
+    /**
+     * Describes boolean function returning the expression, it is rendered from the <code>boolMethod</code>
+     * template when the output is written
+     * @param functionName
+     * @param expression condition returned by the function, referred to by its range in the source
+     * @param arguments local variables passed to the function
+     * @param isStatic whether the function is called from a static context
+     */
+    private RefactoringPlan.ExtractedMethod createMethod(
+            String functionName,
+            JavaParser.ExpressionContext expression,
+            List<String> arguments,
+            boolean isStatic
+    ){
+        List<String> modifiers = isStatic ? List.of(PRIVATE, STATIC) : List.of(PRIVATE);
+        List<String> argumentTypes = arguments.stream().map(this.symbols::getSymbol).toList();
 
-        while(variable.startsWith("(")){
-            variable = variable.substring(1);
-        }
+        return new RefactoringPlan.ExtractedMethod(modifiers, functionName, argumentTypes, arguments,
+                expression.start.getStartIndex(), expression.stop.getStopIndex() + 1);
+    }
+
+    /**
+     * Returns local variables referenced in if expression, they become arguments of extracted function.
+     * Names which are not locals are fields or constants, the extracted method sees them as well
+     * @param variables references collected from the expression
+     * @return null when a referenced local has no known type, e.g. is declared with <code>var</code>
+     */
+    private List<String> getArgumentsFromExpression(ExpressionVariables variables){
 
-        while(variable.endsWith(")")){
-            if(variable.charAt(variable.length() - 2) != '('){
-                variable = variable.substring(0, variable.length() - 1);
+        List<String> arguments = new ArrayList<>();
+
+        for(String name : variables.getNames()){
+
+            if(!this.symbols.isSymbol(name)){
+                continue;
             }
-            else {
-                break;
+
+            if(this.symbols.getSymbol(name) == null){
+                return null;
             }
+
+            arguments.add(name);
         }
 
-        return variable;
+        return arguments;
     }
 
     /**
-     * Creates function name
+     * Creates function name, the counter is advanced only when the function is inserted.
+     * Names of methods declared in the enclosing class are skipped
+     * @param member member the function is inserted behind
      * @return
      */
-    private String createFunctionName(){
-        String functionName = "boolFunction" + functionCounter;
-        functionCounter++;
+    private String createFunctionName(ParserRuleContext member){
+
+        while(isDeclared("boolFunction" + functionCounter, member)){
+            functionCounter++;
+        }
 
-        return functionName;
+        return "boolFunction" + functionCounter;
     }
 
     /**
-     * Creates method invocation string. This string will replace expression in if statement
-     * @param funcName
-     * @return
+     * Checks the methods of the class body of the member, when it was not walked
+     * (interface and enum bodies, members streamed one by one) any identifier of the file counts
      */
-    private String createMethodInvocationString(String funcName){
+    private boolean isDeclared(String name, ParserRuleContext member){
 
-        StringBuilder methodInvocationBuilder = new StringBuilder(funcName + "(");
-        List<String> variablesFromExpression = getValidVariablesListFromExpression();
+        MethodIndex methods = classBodies.get(member.getParent());
 
-        boolean firstArgumentInserted = false;
+        if(methods != null){
+            return methods.declares(name);
+        }
 
-        for(String variable : variablesFromExpression){
+        if(fileIdentifiers == null){
+            fileIdentifiers = new HashSet<>();
 
-            if(!this.symbols.isSymbol(variable)){
-                continue;
-            }
+            TokenStream tokens = rewriter.getTokenStream();
 
-            if(!firstArgumentInserted) {
-                methodInvocationBuilder.append(variable);
-                firstArgumentInserted = true;
-                continue;
+            for(int i = 0; i < tokens.size(); i++){
+                if(tokens.get(i).getType() == JavaParser.IDENTIFIER){
+                    fileIdentifiers.add(tokens.get(i).getText());
+                }
             }
-
-            methodInvocationBuilder.append(", ").append(variable);
         }
 
-        return methodInvocationBuilder.toString();
+        return fileIdentifiers.contains(name);
     }
 }
@@ -0,0 +1,261 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Lexes, parses and walks single source file into a {@link RefactoringPlan}, then applies the plan.
+ * Instances hold no per-file state and may be shared between threads
+ */
+public class FileRefactorer {
+
+    public static final String PLAN_SUFFIX = ".plan";
+    // same as used by CharStreams#fromPath
+    private static final int STREAM_BUFFER_SIZE = 4096;
+
+    private final RefactorOptions options;
+    private final ParserPool parserPool;
+    private final ProjectMethodIndex projectIndex;
+    private final RefactoringPrefilter prefilter;
+    private final ResultCache cache;
+
+    public FileRefactorer(RefactorOptions options) {
+        this(options, new ParserPool());
+    }
+
+    public FileRefactorer(RefactorOptions options, ParserPool parserPool) {
+        this(options, parserPool, null);
+    }
+
+    public FileRefactorer(RefactorOptions options, ParserPool parserPool, ProjectMethodIndex projectIndex) {
+        this(options, parserPool, projectIndex, null);
+    }
+
+    /**
+     * @param cache results and tokens of files refactored before, null when not cached
+     */
+    public FileRefactorer(
+            RefactorOptions options,
+            ParserPool parserPool,
+            ProjectMethodIndex projectIndex,
+            ResultCache cache
+    ) {
+        this.options = options;
+        this.parserPool = parserPool;
+        this.projectIndex = projectIndex;
+        this.prefilter = options.isPrefilter() ? new RefactoringPrefilter(options, projectIndex) : null;
+        this.cache = cache;
+    }
+
+    /**
+     * Refactors source file and writes the result to target
+     * @param source file to refactor
+     * @param target file the refactored source is written to
+     */
+    public FileResult refactor(Path source, Path target){
+
+        long start = System.nanoTime();
+        Metrics metrics = Metrics.create(options.isMetricsEnabled());
+
+        try {
+            long readStart = metrics.start();
+            long size = Files.size(source);
+            // large sources are lexed straight from the page cache, invalid UTF-8 is decoded as usual
+            CharStream input = size >= options.getMappedInputBytes() ? MappedCharStream.open(source) : null;
+            String contentHash = null;
+            String cacheKey = null;
+
+            if(cache == null){
+                if(input == null){
+                    input = CharStreams.fromPath(source, StandardCharsets.UTF_8);
+                }
+                metrics.stop(Metrics.Phase.READ, readStart);
+            }
+            else {
+                byte[] content = input == null ? Files.readAllBytes(source) : null;
+                contentHash = input instanceof MappedCharStream mapped
+                        ? ResultCache.contentHash(mapped.getBytes())
+                        : ResultCache.contentHash(content);
+                cacheKey = cache.key(contentHash);
+                metrics.stop(Metrics.Phase.READ, readStart);
+
+                long writeStart = metrics.start();
+                createParent(target);
+
+                if(cache.restore(cacheKey, source, target)){
+                    metrics.stop(Metrics.Phase.WRITE, writeStart);
+                    return FileResult.cached(source, size, Files.size(target), System.nanoTime() - start, metrics);
+                }
+
+                if(input == null){
+                    input = CharStreams.fromChannel(Channels.newChannel(new ByteArrayInputStream(content)),
+                            StandardCharsets.UTF_8, STREAM_BUFFER_SIZE, CodingErrorAction.REPLACE, source.toString(), content.length);
+                }
+            }
+
+            CommonTokenStream tokens = cache == null
+                    ? parserPool.lex(input, metrics)
+                    : lexCached(input, contentHash, metrics);
+
+            if(prefilter != null && !prefilter.mayApply(tokens)){
+                if(options.getDiff() != null){
+                    return FileResult.skipped(source, size, System.nanoTime() - start, metrics);
+                }
+
+                FileResult result = copyUnchanged(source, target, start, metrics);
+
+                if(cacheKey != null){
+                    cache.store(cacheKey, null);
+                }
+
+                return result;
+            }
+
+            RefactoringEvents.Walk walkEvent = new RefactoringEvents.Walk();
+            CompositeRefactoringListener listener;
+            ParseMode.ParseOutcome outcome;
+
+            if(options.isStreaming()){
+                // members are walked during parsing, so the event covers the parse as well
+                walkEvent.begin();
+
+                StreamingRefactoringListener streaming = new StreamingRefactoringListener(tokens, options, projectIndex, metrics);
+                outcome = parserPool.parse(tokens, options.getParseMode(), metrics, streaming).getOutcome();
+                listener = streaming.getListener();
+
+                walkEvent.end();
+            }
+            else {
+                outcome = parserPool.parse(tokens, options.getParseMode(), metrics).getOutcome();
+                ParseTree tree = outcome.getTree();
+
+                if(metrics.isEnabled()){
+                    metrics.add(Metrics.Counter.PARSE_TREE_NODES, ParseTrees.countNodes(tree));
+                }
+
+                long walkStart = metrics.start();
+                walkEvent.begin();
+
+                listener = new CompositeRefactoringListener(tokens, options.getRefactorings(), options, projectIndex);
+                ParseTrees.WALKER.walk(listener, tree);
+
+                walkEvent.end();
+                metrics.stop(Metrics.Phase.WALK, walkStart);
+            }
+
+            if(walkEvent.shouldCommit()){
+                walkEvent.file = source.toString();
+                walkEvent.refactoring = options.getRefactorings().toString();
+                walkEvent.applied = listener.getAppliedCount();
+                walkEvent.commit();
+            }
+
+            metrics.add(Metrics.Counter.IF_STATEMENTS, listener.getIfStatementCount());
+            for(Refactoring refactoring : listener.getRefactorings()){
+                metrics.add(refactoring.getAppliedCounter(), listener.getAppliedCount(refactoring));
+            }
+
+            long writeStart = metrics.start();
+            RefactoringPlan plan = listener.getRewriter().toPlan();
+
+            if(options.getDiff() != null){
+                StringWriter patch = new StringWriter();
+                UnifiedDiff.write(plan, input, UnifiedDiff.displayPath(source), patch);
+                metrics.stop(Metrics.Phase.WRITE, writeStart);
+
+                return FileResult.diffed(source, size, System.nanoTime() - start, outcome.isFallbackUsed(),
+                        metrics, listener.getConflicts().size(), patch.toString());
+            }
+
+            createParent(target);
+            try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                PlanApplier.apply(plan, input, writer);
+            }
+
+            if(options.isSavePlans() && !plan.isEmpty()){
+                try (OutputStream out = Files.newOutputStream(target.resolveSibling(target.getFileName() + PLAN_SUFFIX))) {
+                    plan.writeTo(out);
+                }
+            }
+            metrics.stop(Metrics.Phase.WRITE, writeStart);
+
+            if(cacheKey != null){
+                cache.store(cacheKey, plan.isEmpty() ? null : target);
+            }
+
+            return new FileResult(source, Files.size(source), Files.size(target),
+                    System.nanoTime() - start, outcome.isFallbackUsed(), metrics, listener.getConflicts().size());
+        } catch (IOException | RuntimeException e) {
+            return FileResult.failed(source, System.nanoTime() - start, e, metrics);
+        }
+    }
+
+    /**
+     * Maps tokens stored by an earlier run, lexes the input and stores its tokens when there are none
+     * @param input source
+     * @param contentHash hash of the source content
+     * @param metrics metrics of the file, mapping is counted as lexing
+     */
+    private CommonTokenStream lexCached(CharStream input, String contentHash, Metrics metrics) throws IOException {
+
+        String key = ResultCache.tokensKey(contentHash);
+
+        long loadStart = metrics.start();
+        Path file = cache.findTokens(key);
+        CommonTokenStream tokens = null;
+
+        if(file != null){
+            try {
+                tokens = TokenFile.map(file, input);
+            } catch (NoSuchFileException e) {
+                // evicted meanwhile
+            }
+        }
+
+        if(tokens != null){
+            metrics.stop(Metrics.Phase.LEX, loadStart);
+            metrics.add(Metrics.Counter.TOKENS, tokens.size());
+
+            return tokens;
+        }
+
+        CommonTokenStream lexed = parserPool.lex(input, metrics);
+        cache.storeTokens(key, lexed.getTokens());
+
+        return lexed;
+    }
+
+    /**
+     * Copies file the refactorings would not change, without parsing it
+     */
+    private FileResult copyUnchanged(Path source, Path target, long start, Metrics metrics) throws IOException {
+
+        long writeStart = metrics.start();
+        createParent(target);
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        metrics.stop(Metrics.Phase.WRITE, writeStart);
+
+        return FileResult.skipped(source, Files.size(source), System.nanoTime() - start, metrics);
+    }
+
+    private static void createParent(Path target) throws IOException {
+        if(target.getParent() != null){
+            Files.createDirectories(target.getParent());
+        }
+    }
+}
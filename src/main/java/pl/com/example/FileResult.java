@@ -0,0 +1,153 @@
+package pl.com.example;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Outcome of refactoring single source file
+ */
+public class FileResult {
+
+    private final Path source;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long nanos;
+    private final boolean llFallback;
+    private final Throwable failure;
+    private final Metrics metrics;
+    private final int conflicts;
+    private boolean skipped;
+    private boolean cached;
+    // unified diff of the file until it is written out
+    private String patch;
+
+    public FileResult(Path source, long bytesRead, long bytesWritten, long nanos, boolean llFallback) {
+        this(source, bytesRead, bytesWritten, nanos, llFallback, Metrics.DISABLED);
+    }
+
+    public FileResult(Path source, long bytesRead, long bytesWritten, long nanos, boolean llFallback, Metrics metrics) {
+        this(source, bytesRead, bytesWritten, nanos, llFallback, metrics, 0);
+    }
+
+    public FileResult(Path source, long bytesRead, long bytesWritten, long nanos, boolean llFallback, Metrics metrics, int conflicts) {
+        this(source, bytesRead, bytesWritten, nanos, llFallback, null, metrics, conflicts);
+    }
+
+    private FileResult(Path source, long bytesRead, long bytesWritten, long nanos, boolean llFallback, Throwable failure, Metrics metrics, int conflicts) {
+        this.source = source;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.nanos = nanos;
+        this.llFallback = llFallback;
+        this.failure = failure;
+        this.metrics = metrics;
+        this.conflicts = conflicts;
+    }
+
+    /**
+     * Result of file copied unchanged because the prefilter found nothing to refactor
+     */
+    public static FileResult skipped(Path source, long bytes, long nanos, Metrics metrics){
+        FileResult result = new FileResult(source, bytes, bytes, nanos, false, metrics);
+        result.skipped = true;
+        return result;
+    }
+
+    /**
+     * Result of file written from {@link ResultCache}
+     */
+    public static FileResult cached(Path source, long bytesRead, long bytesWritten, long nanos, Metrics metrics){
+        FileResult result = new FileResult(source, bytesRead, bytesWritten, nanos, false, metrics);
+        result.cached = true;
+        return result;
+    }
+
+    /**
+     * Result of file whose changes were turned into a unified diff instead of being written
+     */
+    public static FileResult diffed(Path source, long bytesRead, long nanos, boolean llFallback, Metrics metrics, int conflicts, String patch){
+        FileResult result = new FileResult(source, bytesRead, patch.getBytes(StandardCharsets.UTF_8).length,
+                nanos, llFallback, metrics, conflicts);
+        result.patch = patch;
+        return result;
+    }
+
+    public static FileResult failed(Path source, long nanos, Throwable failure){
+        return failed(source, nanos, failure, Metrics.DISABLED);
+    }
+
+    public static FileResult failed(Path source, long nanos, Throwable failure, Metrics metrics){
+        return new FileResult(source, 0, 0, nanos, false, failure, metrics, 0);
+    }
+
+    public Path getSource() {
+        return source;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Whether SLL parse failed and the file had to be reparsed with full LL prediction
+     */
+    public boolean isLlFallback() {
+        return llFallback;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Phase times and counters of the file, {@link Metrics#DISABLED} when not recorded
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Number of edits skipped because another refactoring already changed the same tokens
+     */
+    public int getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Whether the file was copied without parsing, see {@link RefactoringPrefilter}
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Whether the result was taken from {@link ResultCache} without lexing the file
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Hands over unified diff of the file, the result does not keep it
+     * @return diff, empty when the file is unchanged or the run does not diff
+     */
+    public String takePatch() {
+
+        String taken = patch == null ? "" : patch;
+        patch = null;
+
+        return taken;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+}
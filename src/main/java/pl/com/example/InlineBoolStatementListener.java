@@ -1,65 +1,180 @@
 package pl.com.example;
 
 import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.RuleContext;
-import org.antlr.v4.runtime.TokenStreamRewriter;
-import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.tree.ParseTree;
 import pl.com.example.grammar.JavaParser;
-import pl.com.example.grammar.JavaParserBaseListener;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.function.Function;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
-public class InlineBoolStatementListener extends JavaParserBaseListener {
+public class InlineBoolStatementListener extends SymbolTrackingListener implements RefactoringListener {
 
     private static final int IF_TOKEN = 22;
-    private static final String METHOD_CALL_REGEX = "([_a-zA-Z][_a-zA-Z0-9\\n]+) *\\(\\n*([_a-zA-Z\\n][_a-zA-Z0-9, \\n]+)*\\)";
-    private JavaParser.ClassBodyContext currentClassBody;
-    private final LocalSymbols localSymbols;
+    // innermost class body first
+    private final Deque<ClassFrame> classFrames = new ArrayDeque<>();
     private Integer insertIndex;
-    public TokenStreamRewriter rewriter;
+    public EditLog rewriter;
     public Set<JavaParser.MethodDeclarationContext> calledMethods;
+    private final ProjectMethodIndex projectIndex;
+    // simple name of a single type import to its fully qualified name
+    private final Map<String, String> typeImports = new HashMap<>();
+    // statically imported method name to fully qualified name of its class
+    private final Map<String, String> staticImports = new HashMap<>();
+    // fully qualified names of classes whose static members are all imported
+    private final List<String> staticWildcardImports = new ArrayList<>();
+    private String packageName = "";
+    private int ifStatementCount = 0;
+    private int inlinedCount = 0;
 
     public InlineBoolStatementListener(
             CommonTokenStream commonTokenStream
     ) {
-        this.rewriter = new TokenStreamRewriter(commonTokenStream);
-        this.localSymbols = new LocalSymbols();
+        this(commonTokenStream, null);
+    }
+
+    /**
+     * @param commonTokenStream tokens of the walked file
+     * @param projectIndex predicates declared in other files, null when calls are resolved within the file only
+     */
+    public InlineBoolStatementListener(
+            CommonTokenStream commonTokenStream,
+            ProjectMethodIndex projectIndex
+    ) {
+        this(new EditLog(commonTokenStream), new LocalSymbols(), projectIndex);
+    }
+
+    /**
+     * @param rewriter edit log, possibly shared with other refactorings
+     * @param symbols symbol table, read-only view when it is maintained by someone else
+     * @param projectIndex predicates declared in other files, null when calls are resolved within the file only
+     */
+    public InlineBoolStatementListener(
+            EditLog rewriter,
+            LocalSymbols symbols,
+            ProjectMethodIndex projectIndex
+    ) {
+        super(symbols);
+        this.rewriter = rewriter;
         this.calledMethods = new HashSet<>();
+        this.projectIndex = projectIndex;
     }
 
     @Override
-    public void enterLocalVariableDeclaration(JavaParser.LocalVariableDeclarationContext ctx) {
+    public EditLog getRewriter() {
+        return rewriter;
+    }
 
-        super.enterLocalVariableDeclaration(ctx);
+    @Override
+    public int getIfStatementCount() {
+        return ifStatementCount;
+    }
 
-        this.localSymbols.addSymbol(ctx.variableDeclarators().getText(), ctx.typeType().getText());
+    @Override
+    public int getAppliedCount() {
+        return inlinedCount;
     }
 
     @Override
-    public void enterClassDeclaration(JavaParser.ClassDeclarationContext ctx) {
-        this.currentClassBody = ctx.classBody();
+    public void enterPackageDeclaration(JavaParser.PackageDeclarationContext ctx) {
+        packageName = ctx.qualifiedName().getText();
     }
 
+    /**
+     * Records single type and static imports, predicates from other files are resolved through them
+     * @param ctx the parse tree
+     */
+    @Override
+    public void enterImportDeclaration(JavaParser.ImportDeclarationContext ctx) {
+
+        String name = ctx.qualifiedName().getText();
+        int lastDot = name.lastIndexOf('.');
+
+        if(ctx.STATIC() == null){
+            if(ctx.MUL() == null){
+                typeImports.put(name.substring(lastDot + 1), name);
+            }
+        } else if(ctx.MUL() != null){
+            staticWildcardImports.add(name);
+        } else if(lastDot > 0){
+            staticImports.put(name.substring(lastDot + 1), name.substring(0, lastDot));
+        }
+    }
+
+    /**
+     * Indexes methods of the class body, nested and anonymous classes get their own index
+     * @param ctx the parse tree
+     */
+    @Override
+    public void enterClassBody(JavaParser.ClassBodyContext ctx) {
+        this.classFrames.push(new ClassFrame(MethodIndex.of(ctx)));
+    }
+
+    /**
+     * Removes methods of this class body which were inlined
+     * @param ctx the parse tree
+     */
     @Override
-    public void exitClassDeclaration(JavaParser.ClassDeclarationContext ctx) {
-        this.calledMethods.forEach(call ->
-                rewriter.delete(call.getParent().getParent().start.getTokenIndex()-2,call.stop.getTokenIndex())
+    public void exitClassBody(JavaParser.ClassBodyContext ctx) {
+        this.classFrames.pop().inlinedMethods.forEach(declaration ->
+                rewriter.delete(deletionStart(declaration), deletionEnd(declaration))
         );
     }
 
+    /**
+     * First token to delete together with the declaration: the whitespace and comments on the lines
+     * before it, from the line break behind the previous member. A comment ending the line
+     * of the previous member stays with it
+     * @param declaration inlined method
+     */
+    private int deletionStart(JavaParser.MethodDeclarationContext declaration){
+
+        TokenStream tokens = rewriter.getTokenStream();
+        // class body declaration, it starts with the modifiers
+        int start = declaration.getParent().getParent().start.getTokenIndex();
+        int first = start;
+
+        while(first > 0 && tokens.get(first - 1).getChannel() != Token.DEFAULT_CHANNEL){
+            first--;
+        }
+
+        for(int i = first; i < start; i++){
+            if(tokens.get(i).getText().indexOf('\n') >= 0){
+                return i;
+            }
+        }
+
+        return first;
+    }
+
+    /**
+     * Last token to delete together with the declaration, a comment ending its last line goes with it
+     * @param declaration inlined method
+     */
+    private int deletionEnd(JavaParser.MethodDeclarationContext declaration){
+
+        TokenStream tokens = rewriter.getTokenStream();
+        int end = declaration.stop.getTokenIndex();
+
+        while(end + 1 < tokens.size()
+                && tokens.get(end + 1).getChannel() != Token.DEFAULT_CHANNEL
+                && tokens.get(end + 1).getText().indexOf('\n') < 0){
+            end++;
+        }
+
+        return end;
+    }
+
     @Override
     public void exitParExpression(JavaParser.ParExpressionContext ctx) {
 
@@ -67,6 +182,8 @@ public class InlineBoolStatementListener extends JavaParserBaseListener {
             return;
         }
 
+        ifStatementCount++;
+
         if(insertIndex == null || ctx.stop.getTokenIndex() != insertIndex){
             insertIndex = ((JavaParser.StatementContext)ctx.parent).start.getTokenIndex();
         }
@@ -75,122 +192,291 @@ public class InlineBoolStatementListener extends JavaParserBaseListener {
     }
 
     private boolean isIfExpression(JavaParser.ParExpressionContext ctx){
-        return ((JavaParser.StatementContext)ctx.parent).start.getType() == IF_TOKEN;
+        return ctx.parent instanceof JavaParser.StatementContext statement && statement.start.getType() == IF_TOKEN;
     }
 
     /**
      * Finds the method used within the <b>IF</b> condition
      * and places the result logical operation as the condition.
      * If any operations were performed within the method,
-     * then the same operations are placed just before the <b>IF</b> statement
+     * then the same operations are placed just before the <b>IF</b> statement.
+     * Methods not declared in this file are looked up in the project index
+     * and their declarations are left untouched
      * @param ctx
      */
     private void inlineBooleanExpression(JavaParser.ParExpressionContext ctx) {
-        String expression = ctx.expression().getText();
-
-        Pattern methodCallPattern = Pattern.compile(METHOD_CALL_REGEX);
-        Matcher methodCallMatcher = methodCallPattern.matcher(expression);
 
         List<Method> methodCalls = new ArrayList<>();
+        collectMethodCalls(ctx.expression(), methodCalls);
+
+        for(Method call : methodCalls){
+
+            Pair<ClassFrame, JavaParser.MethodDeclarationContext> local = call.qualifier == null ? findMethod(call) : null;
+            boolean indexed = local == null;
+
+            String returnExpression = indexed
+                    ? getIndexedReturnExpression(call)
+                    : getReturnExpression(call, local.b);
+
+            if(returnExpression == null || returnExpression.isEmpty()){
+                continue;
+            }
+
+            String target = call.qualifier == null ? call.name : call.qualifier + '.' + call.name;
+            // call being only part of the condition keeps its precedence
+            RefactoringPlan.InlinedCall replacement = new RefactoringPlan.InlinedCall(target, returnExpression,
+                    call.callSite != ctx.expression());
+
+            // call may be within a condition already changed by another refactoring
+            if(!rewriter.replace(call.callSite.start, call.callSite.stop, replacement)){
+                continue;
+            }
+
+            // only calls really inlined get an event
+            RefactoringEvents.Inline event = new RefactoringEvents.Inline();
+            event.begin();
 
-        while(methodCallMatcher.find()){
-            String[] argNames = methodCallMatcher.group(2).split(",");
-            methodCalls.add(
-                    new Method(methodCallMatcher.group(1),
-                            Arrays.stream(argNames)
-                                    .map(argName -> new Pair<>(argName, localSymbols.getSymbol(argName)))
-                                    .toList())
-            );
+            // declaration is removed only when its call was really inlined
+            if(local != null){
+                local.a.inlinedMethods.add(local.b);
+                this.calledMethods.add(local.b);
+            }
+
+            inlinedCount++;
+
+            event.end();
+
+            if(event.shouldCommit()){
+                event.file = rewriter.getTokenStream().getSourceName();
+                event.method = target;
+                event.startToken = call.callSite.start.getTokenIndex();
+                event.stopToken = call.callSite.stop.getTokenIndex();
+                event.indexed = indexed;
+                event.commit();
+            }
+//            rewriter.insertBefore(insertIndex, extractMethodBody(declaration));
         }
-        Map<Method, JavaParser.MethodDeclarationContext> callToDeclaration = methodCalls.stream().collect(Collectors.toMap(
-                Function.identity(),
-                method -> findMethodInClass(method, currentClassBody)
-        ));
+    }
 
-        this.calledMethods.addAll(new HashSet<>(callToDeclaration.values()));
+    private String getIndexedReturnExpression(Method call) {
 
+        if(projectIndex == null){
+            return null;
+        }
 
-        callToDeclaration.forEach(
-                (call, declaration) -> {
-                    rewriter.replace(ctx.expression().start, ctx.expression().stop, getReturnExpression(call, declaration));
-//                    rewriter.insertBefore(insertIndex, extractMethodBody(declaration));
-                }
-            );
+        List<String> argumentTypes = call.params.stream().map(param -> param.b).toList();
+        ProjectMethodIndex.Entry entry;
+
+        if(call.qualifier != null){
+            entry = findQualified(call.qualifier, call.name, argumentTypes);
+        } else if(staticImports.containsKey(call.name)){
+            entry = projectIndex.find(staticImports.get(call.name), call.name, argumentTypes);
+        } else {
+            // on-demand imports, a name found in more than one of them is left alone
+            List<ProjectMethodIndex.Entry> found = staticWildcardImports.stream()
+                    .map(type -> projectIndex.find(type, call.name, argumentTypes))
+                    .filter(Objects::nonNull)
+                    .toList();
+            entry = found.size() == 1 ? found.get(0) : null;
+        }
+
+        return entry == null ? null : entry.inline(call.params.stream().map(param -> param.a).toList());
     }
 
-    private JavaParser.MethodDeclarationContext findMethodInClass(Method targetMethod, JavaParser.ClassBodyContext classBody) {
-        for (JavaParser.ClassBodyDeclarationContext decl : classBody.classBodyDeclaration()) {
-            if (decl.memberDeclaration() != null && decl.memberDeclaration().methodDeclaration() != null) {
-                JavaParser.MethodDeclarationContext method = decl.memberDeclaration().methodDeclaration();
-                if (compareMethodSignatures(targetMethod, method)) {
-                    return method;
+    /**
+     * Resolves the class a call is qualified with as the compiler would, first through a single type import
+     * of its first name, then within the package of this file, then as a fully qualified name.
+     * On-demand imports are not followed, their calls are left alone
+     * @param qualifier class name as written, e.g. <code>Util</code>, <code>Outer.Inner</code> or <code>lib.Util</code>
+     */
+    private ProjectMethodIndex.Entry findQualified(String qualifier, String name, List<String> argumentTypes){
+
+        int firstDot = qualifier.indexOf('.');
+        String first = firstDot < 0 ? qualifier : qualifier.substring(0, firstDot);
+
+        if(typeImports.containsKey(first)){
+            return projectIndex.find(typeImports.get(first) + qualifier.substring(first.length()), name, argumentTypes);
+        }
+
+        ProjectMethodIndex.Entry entry = projectIndex.find(
+                packageName.isEmpty() ? qualifier : packageName + '.' + qualifier, name, argumentTypes);
+
+        // a dotted name not found within the package may be fully qualified
+        if(entry == null && firstDot > 0){
+            entry = projectIndex.find(qualifier, name, argumentTypes);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Collects unqualified method calls and calls qualified by a class name
+     * (<code>Type.method(...)</code>, <code>pkg.Type.method(...)</code>) of the expression in source order, arguments which are
+     * local variables get their declared type. Arguments which are not atomic are
+     * parenthesized, see {@link #isAtomic(JavaParser.ExpressionContext)}. The subtree is traversed with an explicit stack
+     * @param root expression subtree
+     * @param calls collected calls
+     */
+    private void collectMethodCalls(ParseTree root, List<Method> calls) {
+
+        Deque<ParseTree> pending = new ArrayDeque<>();
+        pending.push(root);
+
+        while(!pending.isEmpty()){
+
+            ParseTree node = pending.pop();
+
+            if(node instanceof JavaParser.ExpressionContext expression
+                    && expression.methodCall() != null
+                    && expression.methodCall().identifier() != null
+                    && (expression.bop == null || isNameQualified(expression))
+            ){
+                JavaParser.MethodCallContext methodCall = expression.methodCall();
+                List<Pair<String, String>> params = new ArrayList<>();
+
+                if(methodCall.expressionList() != null){
+                    for(JavaParser.ExpressionContext argument : methodCall.expressionList().expression()){
+                        String argName = ParseTrees.getText(argument, rewriter.getTokenStream());
+                        // substituted into the callee's expression, where an operator would bind differently
+                        String substituted = isAtomic(argument) ? argName : "(" + argName + ")";
+                        params.add(new Pair<>(substituted, symbols.getSymbol(argName)));
+                    }
                 }
+
+                String qualifier = expression.bop == null ? null : expression.expression(0).getText();
+
+                calls.add(new Method(qualifier, methodCall.identifier().getText(), params, expression));
+            }
+
+            // last child pushed first, so children are visited left to right
+            for(int i = node.getChildCount() - 1; i >= 0; i--){
+                pending.push(node.getChild(i));
             }
         }
-        return null;
     }
 
-    private boolean compareMethodSignatures(Method methodCall, JavaParser.MethodDeclarationContext method) {
-        if (!methodCall.name.equals(method.identifier().getText())) {
+    /**
+     * Primary expression, member access, method call or array element, no operator binds tighter than these
+     */
+    private static boolean isAtomic(JavaParser.ExpressionContext expression){
+        return expression.primary() != null
+                || (expression.bop != null && expression.bop.getType() == JavaParser.DOT)
+                || (expression.bop == null && expression.methodCall() != null)
+                || (expression.getChildCount() == 4 && expression.getChild(1).getText().equals("["));
+    }
+
+    /**
+     * Checks if the call is qualified by a name, plain or dotted, not starting with a local variable
+     */
+    private boolean isNameQualified(JavaParser.ExpressionContext expression) {
+
+        if(expression.bop.getType() != JavaParser.DOT || expression.expression().size() != 1){
             return false;
         }
-        JavaParser.FormalParameterListContext paramContext = method.formalParameters().formalParameterList();
-        List<JavaParser.FormalParameterContext> formalParameterContexts = paramContext == null ?
-                Collections.emptyList()
-                :
-                paramContext.formalParameter();
 
-        List<Pair<String, String>> methodCallParams = methodCall.params;
-        if (formalParameterContexts.size() != methodCallParams.size()) {
-            return false;
+        JavaParser.ExpressionContext qualifier = expression.expression(0);
+
+        while(qualifier.bop != null && qualifier.bop.getType() == JavaParser.DOT
+                && qualifier.expression().size() == 1 && qualifier.identifier() != null){
+            qualifier = qualifier.expression(0);
         }
-        for (int i = 0; i < methodCallParams.size(); i++) {
-            if (!methodCallParams.get(i).b.equals(formalParameterContexts.get(i).typeType().getText())) {
-                return false;
+
+        return qualifier.primary() != null
+                && qualifier.primary().identifier() != null
+                && !symbols.isSymbol(qualifier.getText());
+    }
+
+    /**
+     * Looks the call up in indexes of enclosing class bodies, from the innermost one
+     * @param call method call
+     */
+    private Pair<ClassFrame, JavaParser.MethodDeclarationContext> findMethod(Method call) {
+
+        List<String> argumentTypes = call.params.stream().map(param -> param.b).toList();
+
+        for(ClassFrame frame : classFrames){
+            JavaParser.MethodDeclarationContext declaration = frame.methodIndex.find(call.name, argumentTypes);
+
+            if(declaration != null){
+                return new Pair<>(frame, declaration);
             }
         }
-        return true;
+
+        return null;
     }
 
     private String getReturnExpression(Method call, JavaParser.MethodDeclarationContext declaration) {
+
+        if (declaration.methodBody().block() == null) {
+            return "";
+        }
+
         for (JavaParser.BlockStatementContext statement : declaration.methodBody().block().blockStatement()) {
-            if (statement.statement() != null && statement.statement().RETURN() != null) {
+            if (statement.statement() != null
+                    && statement.statement().RETURN() != null
+                    && !statement.statement().expression().isEmpty()) {
 
-                return swapParams(rewriter.getTokenStream().getText(Interval.of(
-                        statement.statement().expression().get(0).start.getTokenIndex(),
-                        statement.statement().expression().get(0).stop.getTokenIndex()
-                )), call, declaration);
+                return swapParams(statement.statement().expression().get(0), call, declaration);
             }
         }
         return "";
     }
 
-    private String swapParams(String methodBody, Method call, JavaParser.MethodDeclarationContext declaration) {
+    /**
+     * Text of the return expression with parameter identifiers replaced by call arguments,
+     * other identifiers containing parameter names are left alone
+     */
+    private String swapParams(JavaParser.ExpressionContext returnExpression, Method call, JavaParser.MethodDeclarationContext declaration) {
+
+        List<String> formals = new ArrayList<>();
+        JavaParser.FormalParameterListContext parameters = declaration.formalParameters().formalParameterList();
 
-        List<String> formals = declaration.formalParameters().formalParameterList().formalParameter().stream()
-                .map(rule -> rule.variableDeclaratorId().identifier().getText()).toList();
-        List<String>  actual = call.params.stream().map(param -> param.a).toList();
+        if(parameters != null) {
+            parameters.formalParameter().forEach(rule -> formals.add(rule.variableDeclaratorId().identifier().getText()));
 
-        if(formals.isEmpty()) {
-            return methodBody;
+            if(parameters.lastFormalParameter() != null){
+                formals.add(parameters.lastFormalParameter().variableDeclaratorId().identifier().getText());
+            }
         }
 
-        String result = methodBody;
+        List<String> actual = call.params.stream().map(param -> param.a).toList();
+        StringBuilder result = new StringBuilder();
+
+        for(int i = returnExpression.start.getTokenIndex(); i <= returnExpression.stop.getTokenIndex(); i++){
+            Token token = rewriter.getTokenStream().get(i);
+            int parameter = token.getType() == JavaParser.IDENTIFIER ? formals.indexOf(token.getText()) : -1;
 
-        for (int i = 0; i < formals.size(); i++) {
-            result = result.replaceAll(formals.get(i), actual.get(i));
+            result.append(parameter < 0 || parameter >= actual.size() ? token.getText() : actual.get(parameter));
         }
-        return result;
+
+        return result.toString();
     }
 
     static class Method {
+        // class name the method is called on, null for unqualified calls
+        private final String qualifier;
         private final String name;
         private final List<Pair<String, String>> params;
+        private final JavaParser.ExpressionContext callSite;
 
-        public Method(String name, List<Pair<String, String>> params) {
+        public Method(String qualifier, String name, List<Pair<String, String>> params, JavaParser.ExpressionContext callSite) {
+            this.qualifier = qualifier;
             this.name = name;
             this.params = params;
+            this.callSite = callSite;
         }
 
     }
+
+    /**
+     * Method index of a class body together with its methods that were inlined
+     */
+    private static class ClassFrame {
+        private final MethodIndex methodIndex;
+        private final Set<JavaParser.MethodDeclarationContext> inlinedMethods = new LinkedHashSet<>();
+
+        private ClassFrame(MethodIndex methodIndex) {
+            this.methodIndex = methodIndex;
+        }
+    }
 }
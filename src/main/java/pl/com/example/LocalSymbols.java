@@ -1,33 +1,164 @@
 package pl.com.example;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Block-scoped table of local symbols and their types.
+ * Declarations are kept in arrays in declaration order, every scope is just an offset into them,
+ * so entering and leaving a scope does not allocate. Innermost declaration of every name is
+ * reachable through a single map lookup and shadowed declarations are restored on scope exit.
+ */
 public class LocalSymbols {
 
-    private final Map<String, String> symbols;
+    private static final int INITIAL_CAPACITY = 32;
+    private static final int NONE = -1;
 
-    public LocalSymbols() {
-        this.symbols = new HashMap<>();
+    private String[] names = new String[INITIAL_CAPACITY];
+    private String[] types = new String[INITIAL_CAPACITY];
+    // index of the declaration shadowed by the one at the same position
+    private int[] shadowed = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    private int[] scopeStarts = new int[INITIAL_CAPACITY];
+    private int depth = 0;
+
+    private final Map<String, Integer> innermost = new HashMap<>();
+    private final Map<String, String> interned = new HashMap<>();
+
+    /**
+     * Opens new scope, symbols added from now on are removed by matching {@link #exitScope()}
+     */
+    public void enterScope(){
+
+        if(depth == scopeStarts.length){
+            scopeStarts = Arrays.copyOf(scopeStarts, depth * 2);
+        }
+
+        scopeStarts[depth++] = size;
+    }
+
+    /**
+     * Removes symbols declared in the current scope and restores the ones they shadowed
+     */
+    public void exitScope(){
+
+        if(depth == 0){
+            return;
+        }
+
+        int start = scopeStarts[--depth];
+
+        for(int i = size - 1; i >= start; i--){
+
+            if(shadowed[i] == NONE){
+                innermost.remove(names[i]);
+            }
+            else {
+                innermost.put(names[i], shadowed[i]);
+            }
+
+            names[i] = null;
+            types[i] = null;
+        }
+
+        size = start;
     }
 
+    /**
+     * Declares symbol in the current scope. Redeclaration within the same scope keeps the first one
+     * @param name symbol name
+     * @param type declared type, null when it cannot be told from the declaration
+     */
     public void addSymbol(String name, String type){
 
-        if(!this.symbols.containsKey(name)){
-            this.symbols.put(name, type);
+        Integer previous = innermost.get(name);
+
+        if(previous != null && previous >= currentScopeStart()){
+            return;
         }
+
+        if(size == names.length){
+            names = Arrays.copyOf(names, size * 2);
+            types = Arrays.copyOf(types, size * 2);
+            shadowed = Arrays.copyOf(shadowed, size * 2);
+        }
+
+        names[size] = intern(name);
+        types[size] = type == null ? null : intern(type);
+        shadowed[size] = previous == null ? NONE : previous;
+        innermost.put(names[size], size);
+        size++;
     }
 
     public String getSymbol(String name){
-        return this.symbols.get(name);
+
+        Integer index = innermost.get(name);
+
+        return index == null ? null : types[index];
     }
 
     public void clearSymbols(){
-        this.symbols.clear();
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(types, 0, size, null);
+        size = 0;
+        depth = 0;
+        innermost.clear();
     }
 
     public boolean isSymbol(String name){
-        return this.symbols.containsKey(name);
+        return this.innermost.containsKey(name);
     }
 
+    private int currentScopeStart(){
+        return depth == 0 ? 0 : scopeStarts[depth - 1];
+    }
+
+    private String intern(String value){
+        return interned.computeIfAbsent(value, key -> key);
+    }
+
+    /**
+     * View answering lookups from this table and ignoring all changes. Given to listeners
+     * which share a table maintained by someone else, so their own scope tracking is disabled
+     */
+    public LocalSymbols readOnlyView(){
+        return new ReadOnlyView(this);
+    }
+
+    private static class ReadOnlyView extends LocalSymbols {
+
+        private final LocalSymbols table;
+
+        private ReadOnlyView(LocalSymbols table) {
+            this.table = table;
+        }
+
+        @Override
+        public void enterScope() {
+        }
+
+        @Override
+        public void exitScope() {
+        }
+
+        @Override
+        public void addSymbol(String name, String type) {
+        }
+
+        @Override
+        public void clearSymbols() {
+        }
+
+        @Override
+        public String getSymbol(String name) {
+            return table.getSymbol(name);
+        }
+
+        @Override
+        public boolean isSymbol(String name) {
+            return table.isSymbol(name);
+        }
+    }
 }
@@ -9,12 +9,21 @@ import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import pl.com.example.grammar.JavaLexer;
 import pl.com.example.grammar.JavaParser;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class Main {
     public static void main(String[] args) {
 
+        if(args.length > 0){
+            runBatch(args);
+            return;
+        }
+
         CharStream inp = null;
 
         try {
@@ -28,20 +37,74 @@ public class Main {
         JavaParser par = new JavaParser(tokens);
 
         ParseTree tree = par.compilationUnit();
-        ParseTreeWalker walker = new ParseTreeWalker();
+        ParseTreeWalker walker = ParseTrees.WALKER;
 
 //        ExtractBoolStatementsListener listener = new ExtractBoolStatementsListener(tokens, 2);
         InlineBoolStatementListener listener = new InlineBoolStatementListener(tokens);
 
         walker.walk(listener, tree);
 
-        try {
-            var wr = new FileWriter("./src/main/resources/wy.java");
-            wr.write(listener.rewriter.getText());
-            wr.close();
+        try (Writer wr = Files.newBufferedWriter(Path.of("./src/main/resources/wy.java"), StandardCharsets.UTF_8)) {
+            listener.rewriter.writeTo(wr);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Refactors every java file under the given roots and prints run summary
+     * @param args command line arguments, see {@link RefactorOptions#parse(String[])}
+     */
+    private static void runBatch(String[] args){
+
+        RefactorOptions options;
+
+        try {
+            options = RefactorOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(RefactorOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        // standard output may carry the diff, the report must not mix into it
+        PrintStream out = options.isDiffToStandardOutput() ? System.err : System.out;
+
+        if(options.getDfaSnapshot() != null){
+            boolean loaded = DfaSnapshot.load(options.getDfaSnapshot());
+            out.println("DFA snapshot:     " + (loaded ? "loaded " : "not used, starting cold ") + options.getDfaSnapshot());
+        }
+
+        BatchReport report = new BatchRefactorer(options).run();
+        report.print(out);
+
+        if(options.isMetricsEnabled()){
+            printMetrics(new MetricsSummary(report.getResults()), options.getMetricsJson(), out);
+        }
+
+        if(options.getDfaSnapshot() != null){
+            DfaSnapshot.save(options.getDfaSnapshot());
+        }
+
+        if(report.getFailedCount() > 0){
+            System.exit(1);
+        }
+    }
+
+    private static void printMetrics(MetricsSummary summary, Path json, PrintStream out){
+
+        summary.print(out);
+
+        if(json == null){
+            return;
+        }
+
+        try {
+            summary.writeJson(json);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
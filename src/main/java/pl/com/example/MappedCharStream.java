@@ -0,0 +1,352 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Code points of a UTF-8 file read straight from its memory-mapped content, so the source
+ * never has to be decoded into the heap. Token texts are decoded only when asked for.
+ * <p>
+ * Pure ASCII content is indexed by byte offset. Otherwise the byte offset of every
+ * {@value #CHECKPOINT_INTERVAL}th code point is kept and the rest is found by decoding
+ * from the nearest checkpoint or from the position used last, which is close by,
+ * as both the lexer and token texts go through the file in order.
+ * Like other char streams it is meant for a single thread.
+ */
+public class MappedCharStream implements CharStream {
+
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    private final ByteBuffer bytes;
+    private final String sourceName;
+    private final int size;
+    // byte offsets of code points 0, 64, 128, ..., null for pure ASCII content
+    private final int[] checkpoints;
+
+    // code point the lexer is at and its byte offset
+    private int index = 0;
+    private int offset = 0;
+
+    // last code point located by getText and its byte offset
+    private int textIndex = 0;
+    private int textOffset = 0;
+
+    private MappedCharStream(ByteBuffer bytes, String sourceName, int size, int[] checkpoints) {
+        this.bytes = bytes;
+        this.sourceName = sourceName;
+        this.size = size;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Maps the file and checks it is well-formed UTF-8
+     * @param file source file
+     * @return stream of the file, null when it is not valid UTF-8 or too large to be mapped at once
+     */
+    public static MappedCharStream open(Path file) throws IOException {
+
+        ByteBuffer bytes;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            if(channel.size() > Integer.MAX_VALUE){
+                return null;
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            bytes = mapped;
+        }
+
+        int length = bytes.limit();
+        int[] checkpoints = new int[16];
+        boolean ascii = true;
+        int codePoints = 0;
+        int position = 0;
+
+        while(position < length){
+
+            if(codePoints % CHECKPOINT_INTERVAL == 0){
+
+                int checkpoint = codePoints / CHECKPOINT_INTERVAL;
+
+                if(checkpoint == checkpoints.length){
+                    checkpoints = Arrays.copyOf(checkpoints, checkpoint * 2);
+                }
+
+                checkpoints[checkpoint] = position;
+            }
+
+            int sequence = bytes.get(position) >= 0 ? 1 : validSequenceLength(bytes, position);
+
+            if(sequence < 0){
+                return null;
+            }
+
+            ascii &= sequence == 1;
+            position += sequence;
+            codePoints++;
+        }
+
+        return new MappedCharStream(bytes, file.toString(), codePoints,
+                ascii ? null : Arrays.copyOf(checkpoints, codePoints / CHECKPOINT_INTERVAL + 1));
+    }
+
+    /**
+     * Length of the multibyte sequence starting at position, -1 when it is malformed,
+     * overlong, a surrogate or above U+10FFFF
+     */
+    private static int validSequenceLength(ByteBuffer bytes, int position){
+
+        int lead = bytes.get(position) & 0xff;
+        int length;
+        int secondMin = 0x80;
+        int secondMax = 0xbf;
+
+        if(lead >= 0xc2 && lead <= 0xdf){
+            length = 2;
+        }
+        else if(lead >= 0xe0 && lead <= 0xef){
+            length = 3;
+            secondMin = lead == 0xe0 ? 0xa0 : secondMin;
+            secondMax = lead == 0xed ? 0x9f : secondMax;
+        }
+        else if(lead >= 0xf0 && lead <= 0xf4){
+            length = 4;
+            secondMin = lead == 0xf0 ? 0x90 : secondMin;
+            secondMax = lead == 0xf4 ? 0x8f : secondMax;
+        }
+        else {
+            return -1;
+        }
+
+        if(position + length > bytes.limit()){
+            return -1;
+        }
+
+        int second = bytes.get(position + 1) & 0xff;
+
+        if(second < secondMin || second > secondMax){
+            return -1;
+        }
+
+        for(int i = 2; i < length; i++){
+            if((bytes.get(position + i) & 0xc0) != 0x80){
+                return -1;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Content of the file, for hashing without reading it into the heap
+     */
+    public ByteBuffer getBytes() {
+        return bytes.duplicate().clear();
+    }
+
+    @Override
+    public void consume() {
+
+        if(index >= size){
+            throw new IllegalStateException("cannot consume EOF");
+        }
+
+        offset = next(offset);
+        index++;
+    }
+
+    @Override
+    public int LA(int i) {
+
+        if(i == 0){
+            return 0;
+        }
+
+        int target = i > 0 ? index + i - 1 : index + i;
+
+        if(target < 0 || target >= size){
+            return IntStream.EOF;
+        }
+
+        if(checkpoints == null){
+            return bytes.get(target);
+        }
+
+        int position = offset;
+
+        for(int k = index; k < target; k++){
+            position = next(position);
+        }
+
+        for(int k = index; k > target; k--){
+            position = previous(position);
+        }
+
+        return decode(position);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public void seek(int index) {
+
+        int target = Math.min(index, size);
+        offset = offsetOf(target, this.index, offset);
+        this.index = target;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    @Override
+    public String getText(Interval interval) {
+
+        int start = Math.max(interval.a, 0);
+        int stop = Math.min(interval.b, size - 1);
+
+        if(start > stop){
+            return "";
+        }
+
+        if(checkpoints == null){
+            return readText(start, stop + 1, StandardCharsets.US_ASCII);
+        }
+
+        int from = offsetOf(start, textIndex, textOffset);
+        int to = from;
+
+        for(int k = start; k <= stop; k++){
+            to = next(to);
+        }
+
+        textIndex = stop + 1;
+        textOffset = to;
+
+        return readText(from, to, StandardCharsets.UTF_8);
+    }
+
+    private String readText(int from, int to, Charset charset){
+
+        byte[] text = new byte[to - from];
+        bytes.get(from, text);
+
+        return new String(text, charset);
+    }
+
+    @Override
+    public String toString() {
+        return getText(Interval.of(0, size - 1));
+    }
+
+    /**
+     * Byte offset of the code point, decoded from a known nearby code point or the nearest checkpoint
+     * @param target code point index, at most size
+     * @param knownIndex code point whose offset is known
+     * @param knownOffset byte offset of knownIndex
+     */
+    private int offsetOf(int target, int knownIndex, int knownOffset){
+
+        if(checkpoints == null){
+            return target;
+        }
+
+        if(target == size){
+            return bytes.limit();
+        }
+
+        int position;
+        int from;
+
+        if(target >= knownIndex && target - knownIndex < CHECKPOINT_INTERVAL){
+            position = knownOffset;
+            from = knownIndex;
+        }
+        else if(target < knownIndex && knownIndex - target < CHECKPOINT_INTERVAL / 2){
+            for(int k = knownIndex; k > target; k--){
+                knownOffset = previous(knownOffset);
+            }
+            return knownOffset;
+        }
+        else {
+            position = checkpoints[target / CHECKPOINT_INTERVAL];
+            from = target - target % CHECKPOINT_INTERVAL;
+        }
+
+        for(int k = from; k < target; k++){
+            position = next(position);
+        }
+
+        return position;
+    }
+
+    private int next(int position){
+
+        int lead = bytes.get(position);
+
+        if(lead >= 0){
+            return position + 1;
+        }
+
+        return position + ((lead & 0xe0) == 0xc0 ? 2 : (lead & 0xf0) == 0xe0 ? 3 : 4);
+    }
+
+    private int previous(int position){
+
+        do {
+            position--;
+        } while((bytes.get(position) & 0xc0) == 0x80);
+
+        return position;
+    }
+
+    private int decode(int position){
+
+        int lead = bytes.get(position) & 0xff;
+
+        if(lead < 0x80){
+            return lead;
+        }
+
+        if(lead < 0xe0){
+            return (lead & 0x1f) << 6 | bytes.get(position + 1) & 0x3f;
+        }
+
+        if(lead < 0xf0){
+            return (lead & 0x0f) << 12 | (bytes.get(position + 1) & 0x3f) << 6 | bytes.get(position + 2) & 0x3f;
+        }
+
+        return (lead & 0x07) << 18 | (bytes.get(position + 1) & 0x3f) << 12
+                | (bytes.get(position + 2) & 0x3f) << 6 | bytes.get(position + 3) & 0x3f;
+    }
+}
@@ -0,0 +1,119 @@
+package pl.com.example;
+
+import pl.com.example.grammar.JavaParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash index of methods declared directly in a class body,
+ * keyed by name and parameter types and, as a fallback, by name and arity
+ */
+public class MethodIndex {
+
+    private final Map<String, JavaParser.MethodDeclarationContext> bySignature = new HashMap<>();
+    private final Map<String, List<JavaParser.MethodDeclarationContext>> byArity = new HashMap<>();
+    private final Set<String> byName = new HashSet<>();
+
+    /**
+     * Indexes methods of class body, nested classes are not descended into
+     * @param classBody the parse tree
+     */
+    public static MethodIndex of(JavaParser.ClassBodyContext classBody){
+
+        MethodIndex index = new MethodIndex();
+
+        for(JavaParser.ClassBodyDeclarationContext decl : classBody.classBodyDeclaration()){
+            if(decl.memberDeclaration() != null && decl.memberDeclaration().methodDeclaration() != null){
+                index.add(decl.memberDeclaration().methodDeclaration());
+            }
+        }
+
+        return index;
+    }
+
+    private void add(JavaParser.MethodDeclarationContext method){
+
+        String name = method.identifier().getText();
+        List<String> parameterTypes = parameterTypes(method);
+
+        bySignature.putIfAbsent(signatureKey(name, parameterTypes), method);
+        byArity.computeIfAbsent(arityKey(name, parameterTypes.size()), key -> new ArrayList<>()).add(method);
+        byName.add(name);
+    }
+
+    /**
+     * Checks if a method of the name is declared, whatever its parameters
+     */
+    public boolean declares(String name){
+        return byName.contains(name);
+    }
+
+    /**
+     * Finds method matching call. When some argument type is unknown,
+     * the method is matched by arity, but only if that is unambiguous
+     * @param name called method name
+     * @param argumentTypes types of arguments, null for unknown ones
+     */
+    public JavaParser.MethodDeclarationContext find(String name, List<String> argumentTypes){
+
+        if(!argumentTypes.contains(null)){
+            JavaParser.MethodDeclarationContext method = bySignature.get(signatureKey(name, argumentTypes));
+
+            if(method != null){
+                return method;
+            }
+        }
+
+        List<JavaParser.MethodDeclarationContext> candidates = byArity.get(arityKey(name, argumentTypes.size()));
+
+        if(candidates == null || candidates.size() != 1){
+            return null;
+        }
+
+        JavaParser.MethodDeclarationContext candidate = candidates.get(0);
+        List<String> parameterTypes = parameterTypes(candidate);
+
+        for(int i = 0; i < argumentTypes.size(); i++){
+            if(argumentTypes.get(i) != null && !argumentTypes.get(i).equals(parameterTypes.get(i))){
+                return null;
+            }
+        }
+
+        return candidate;
+    }
+
+    static List<String> parameterTypes(JavaParser.MethodDeclarationContext method){
+
+        JavaParser.FormalParameterListContext parameters = method.formalParameters().formalParameterList();
+
+        if(parameters == null){
+            return Collections.emptyList();
+        }
+
+        List<String> types = new ArrayList<>();
+
+        for(JavaParser.FormalParameterContext parameter : parameters.formalParameter()){
+            types.add(parameter.typeType().getText());
+        }
+
+        if(parameters.lastFormalParameter() != null){
+            types.add(parameters.lastFormalParameter().typeType().getText() + "[]");
+        }
+
+        return types;
+    }
+
+    static String signatureKey(String name, List<String> types){
+        return name + '(' + String.join(",", types) + ')';
+    }
+
+    private static String arityKey(String name, int arity){
+        return name + '/' + arity;
+    }
+}
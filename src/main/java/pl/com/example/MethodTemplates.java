@@ -0,0 +1,86 @@
+package pl.com.example;
+
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Templates of generated code, compiled once per JVM.
+ * The group is read from classpath resource {@value #DEFAULT_GROUP}
+ * unless system property {@value #GROUP_PROPERTY} points to another group file
+ */
+public class MethodTemplates {
+
+    public static final String GROUP_PROPERTY = "refactor.templates";
+    private static final String DEFAULT_GROUP = "templates/boolMethod.stg";
+    private static final String BOOL_METHOD = "boolMethod";
+
+    private static final STGroup GROUP = load();
+    private static final String GROUP_HASH = hash(GROUP);
+
+    private static STGroup load(){
+
+        STGroup group = new STGroupFile(System.getProperty(GROUP_PROPERTY, DEFAULT_GROUP));
+        // compile now, lazy loading of the group is not thread safe
+        group.load();
+
+        if(!group.isDefined(BOOL_METHOD)){
+            throw new IllegalStateException("Template group " + group.getFileName() + " does not define " + BOOL_METHOD);
+        }
+
+        return group;
+    }
+
+    /**
+     * SHA-256 of the group file content, the group is read into the hash right after it was compiled
+     */
+    private static String hash(STGroup group){
+        try (InputStream in = ((STGroupFile) group).url.openStream()) {
+            return HexFormat.of().formatHex(ResultCache.sha256().digest(in.readAllBytes()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * SHA-256 of the content of the template group in use, so outputs rendered with an edited
+     * group file are told apart even when the file keeps its path
+     */
+    public static String getGroupHash() {
+        return GROUP_HASH;
+    }
+
+    /**
+     * Creates extracted boolean method
+     * @param modifiers method modifiers, e.g. private static
+     * @param name method name
+     * @param parameterTypes types of parameters
+     * @param parameterNames names of parameters
+     * @param body returned expression
+     */
+    public static TemplateFragment boolMethod(
+            List<String> modifiers,
+            String name,
+            List<String> parameterTypes,
+            List<String> parameterNames,
+            String body
+    ){
+        ST method = GROUP.getInstanceOf(BOOL_METHOD);
+
+        method.add("modifiers", modifiers);
+        method.add("name", name);
+        method.add("body", body);
+
+        for(int i = 0; i < parameterNames.size(); i++){
+            method.addAggr("params.{type,name}", parameterTypes.get(i), parameterNames.get(i));
+        }
+
+        return new TemplateFragment(method);
+    }
+}
@@ -0,0 +1,69 @@
+package pl.com.example;
+
+/**
+ * Time spent in each phase of refactoring single file and counts of processed elements.
+ * The shared {@link #DISABLED} instance ignores everything and does not even read the clock,
+ * so instrumented code costs a virtual call when metrics are off
+ */
+public class Metrics {
+
+    public enum Phase {
+        READ, LEX, PARSE, WALK,
+        // edits are rendered while the output is written
+        WRITE
+    }
+
+    public enum Counter {
+        IF_STATEMENTS, EXTRACTIONS, INLINES, TOKENS, PARSE_TREE_NODES
+    }
+
+    public static final Metrics DISABLED = new Metrics(false);
+
+    private final boolean enabled;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] counters = new long[Counter.values().length];
+
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * New metrics of single file, or the shared no-op instance
+     * @param enabled whether anything should be recorded
+     */
+    public static Metrics create(boolean enabled){
+        return enabled ? new Metrics(true) : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Marks beginning of a phase
+     * @return start time to be passed to {@link #stop(Phase, long)}
+     */
+    public long start(){
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void stop(Phase phase, long start){
+        if(enabled){
+            phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+        }
+    }
+
+    public void add(Counter counter, long value){
+        if(enabled){
+            counters[counter.ordinal()] += value;
+        }
+    }
+
+    public long get(Phase phase){
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long get(Counter counter){
+        return counters[counter.ordinal()];
+    }
+}
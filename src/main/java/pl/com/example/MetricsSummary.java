@@ -0,0 +1,170 @@
+package pl.com.example;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Aggregate of per-file {@link Metrics}: summary table and JSON dump
+ */
+public class MetricsSummary {
+
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+
+    private final List<FileResult> results;
+    private final long[] totalNanos = new long[Metrics.Phase.values().length];
+    private final long[] maxNanos = new long[Metrics.Phase.values().length];
+    private final long[] totalCounters = new long[Metrics.Counter.values().length];
+
+    public MetricsSummary(List<FileResult> results) {
+
+        this.results = results;
+
+        for(FileResult result : results){
+            for(Metrics.Phase phase : Metrics.Phase.values()){
+                long nanos = result.getMetrics().get(phase);
+                totalNanos[phase.ordinal()] += nanos;
+                maxNanos[phase.ordinal()] = Math.max(maxNanos[phase.ordinal()], nanos);
+            }
+
+            for(Metrics.Counter counter : Metrics.Counter.values()){
+                totalCounters[counter.ordinal()] += result.getMetrics().get(counter);
+            }
+        }
+    }
+
+    public long getTotal(Metrics.Phase phase){
+        return totalNanos[phase.ordinal()];
+    }
+
+    public long getTotal(Metrics.Counter counter){
+        return totalCounters[counter.ordinal()];
+    }
+
+    /**
+     * Prints time of every phase summed over files, its share, average and maximum per file, then counters
+     * @param out stream the table is printed to
+     */
+    public void print(PrintStream out){
+
+        long allPhases = 0;
+
+        for(long nanos : totalNanos){
+            allPhases += nanos;
+        }
+
+        int files = Math.max(results.size(), 1);
+
+        out.printf("%-10s %12s %7s %12s %12s%n", "Phase", "total ms", "share", "avg ms", "max ms");
+
+        for(Metrics.Phase phase : Metrics.Phase.values()){
+            long nanos = totalNanos[phase.ordinal()];
+
+            out.printf("%-10s %12.3f %6.1f%% %12.3f %12.3f%n",
+                    phase.name().toLowerCase(),
+                    nanos / NANOS_IN_MILLI,
+                    allPhases == 0 ? 0.0 : 100.0 * nanos / allPhases,
+                    nanos / NANOS_IN_MILLI / files,
+                    maxNanos[phase.ordinal()] / NANOS_IN_MILLI);
+        }
+
+        for(Metrics.Counter counter : Metrics.Counter.values()){
+            out.printf("%-18s %d%n", counter.name().toLowerCase().replace('_', ' ') + ":", totalCounters[counter.ordinal()]);
+        }
+    }
+
+    /**
+     * Writes totals and metrics of every file as JSON
+     * @param file output file
+     */
+    public void writeJson(Path file) throws IOException {
+
+        if(file.toAbsolutePath().getParent() != null){
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+            out.write("{\n  \"totals\": {");
+            writeValues(out, totalNanos, totalCounters,
+                    results.stream().mapToLong(FileResult::getBytesRead).sum(),
+                    results.stream().mapToLong(FileResult::getBytesWritten).sum());
+            out.write("},\n  \"files\": [");
+
+            for(int i = 0; i < results.size(); i++){
+                FileResult result = results.get(i);
+                Metrics metrics = result.getMetrics();
+                long[] nanos = new long[totalNanos.length];
+                long[] counters = new long[totalCounters.length];
+
+                for(Metrics.Phase phase : Metrics.Phase.values()){
+                    nanos[phase.ordinal()] = metrics.get(phase);
+                }
+
+                for(Metrics.Counter counter : Metrics.Counter.values()){
+                    counters[counter.ordinal()] = metrics.get(counter);
+                }
+
+                out.write(i == 0 ? "\n    {" : ",\n    {");
+                out.write("\"file\": " + quote(result.getSource().toString()) + ", \"failed\": " + result.isFailed() + ", ");
+                writeValues(out, nanos, counters, result.getBytesRead(), result.getBytesWritten());
+                out.write("}");
+            }
+
+            out.write("\n  ]\n}\n");
+        }
+    }
+
+    private static void writeValues(Writer out, long[] nanos, long[] counters, long bytesRead, long bytesWritten) throws IOException {
+
+        for(Metrics.Phase phase : Metrics.Phase.values()){
+            out.write("\"" + phase.name().toLowerCase() + "Nanos\": " + nanos[phase.ordinal()] + ", ");
+        }
+
+        for(Metrics.Counter counter : Metrics.Counter.values()){
+            out.write("\"" + camelCase(counter.name()) + "\": " + counters[counter.ordinal()] + ", ");
+        }
+
+        out.write("\"bytesRead\": " + bytesRead + ", \"bytesWritten\": " + bytesWritten);
+    }
+
+    private static String camelCase(String constant){
+
+        StringBuilder name = new StringBuilder();
+
+        for(String part : constant.toLowerCase().split("_")){
+            name.append(name.isEmpty() ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1));
+        }
+
+        return name.toString();
+    }
+
+    private static String quote(String value){
+
+        StringBuilder quoted = new StringBuilder("\"");
+
+        for(char c : value.toCharArray()){
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if(c < 0x20){
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+
+        return quoted.append('"').toString();
+    }
+}
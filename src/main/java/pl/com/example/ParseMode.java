@@ -0,0 +1,91 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import pl.com.example.grammar.JavaParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strategies of parsing compilation unit
+ */
+public enum ParseMode {
+
+    /**
+     * Full LL prediction with default error recovery
+     */
+    LL {
+        @Override
+        public ParseOutcome parse(JavaParser parser) {
+            return new ParseOutcome(parser.compilationUnit(), false);
+        }
+    },
+
+    /**
+     * Tries the faster SLL prediction first and bails out on the first syntax error.
+     * Only then the input is reparsed with full LL prediction and normal error recovery
+     */
+    SLL_THEN_LL {
+        @Override
+        public ParseOutcome parse(JavaParser parser) {
+
+            List<ANTLRErrorListener> errorListeners = new ArrayList<>(parser.getErrorListeners());
+            ANTLRErrorStrategy errorHandler = parser.getErrorHandler();
+
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+
+            try {
+                return new ParseOutcome(parser.compilationUnit(), false);
+            } catch (ParseCancellationException e) {
+                // falls through to full LL parse below
+            } finally {
+                // parser may be pooled, so its original configuration is always restored
+                errorListeners.forEach(parser::addErrorListener);
+                parser.setErrorHandler(errorHandler);
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            }
+
+            parser.reset();
+
+            return new ParseOutcome(parser.compilationUnit(), true);
+        }
+    };
+
+    /**
+     * Parses compilation unit from parser's token stream
+     * @param parser parser positioned at the beginning of the input
+     */
+    public abstract ParseOutcome parse(JavaParser parser);
+
+    public static ParseMode fromName(String name){
+        return valueOf(name.toUpperCase().replace('-', '_'));
+    }
+
+    /**
+     * Parse tree together with information whether LL fallback was needed
+     */
+    public static class ParseOutcome {
+
+        private final JavaParser.CompilationUnitContext tree;
+        private final boolean fallbackUsed;
+
+        public ParseOutcome(JavaParser.CompilationUnitContext tree, boolean fallbackUsed) {
+            this.tree = tree;
+            this.fallbackUsed = fallbackUsed;
+        }
+
+        public JavaParser.CompilationUnitContext getTree() {
+            return tree;
+        }
+
+        public boolean isFallbackUsed() {
+            return fallbackUsed;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.RuleNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Helpers over parse trees which never recurse, machine generated conditions
+ * chaining thousands of operands give trees deeper than the thread stack
+ */
+public final class ParseTrees {
+
+    /**
+     * Walker keeping its path in an explicit stack, it holds no state between walks
+     */
+    public static final ParseTreeWalker WALKER = new ExplicitStackWalker();
+
+    private ParseTrees() {
+    }
+
+    /**
+     * Same text as {@link ParserRuleContext#getText()}, read from the tokens of the subtree
+     * @param ctx the parse tree
+     * @param tokens token stream the tree was parsed from
+     */
+    public static String getText(ParserRuleContext ctx, TokenStream tokens){
+
+        StringBuilder text = new StringBuilder();
+        int stop = ctx.stop == null ? -1 : ctx.stop.getTokenIndex();
+
+        for(int i = ctx.start.getTokenIndex(); i <= stop; i++){
+
+            Token token = tokens.get(i);
+
+            if(token.getChannel() == Token.DEFAULT_CHANNEL && token.getType() != Token.EOF){
+                text.append(token.getText());
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Counts nodes of the tree without recursion, deep expressions would overflow the stack
+     * @param tree the parse tree
+     */
+    public static long countNodes(ParseTree tree){
+
+        Deque<ParseTree> pending = new ArrayDeque<>();
+        pending.push(tree);
+        long nodes = 0;
+
+        while(!pending.isEmpty()){
+
+            ParseTree node = pending.pop();
+            nodes++;
+
+            for(int i = 0; i < node.getChildCount(); i++){
+                pending.push(node.getChild(i));
+            }
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Depth-first walk with the path kept in arrays of nodes and indexes of their next child.
+     * Events are the same as of {@link ParseTreeWalker}, unlike
+     * {@link org.antlr.v4.runtime.tree.IterativeParseTreeWalker} it does not box child indexes
+     * nor climb back through parents, so it keeps the speed of the recursive walk
+     */
+    private static class ExplicitStackWalker extends ParseTreeWalker {
+
+        @Override
+        public void walk(ParseTreeListener listener, ParseTree tree) {
+
+            if(!(tree instanceof RuleNode root)){
+                visitLeaf(listener, tree);
+                return;
+            }
+
+            RuleNode[] path = new RuleNode[64];
+            int[] nextChild = new int[64];
+            int top = 0;
+
+            enterRule(listener, root);
+            path[0] = root;
+
+            while(top >= 0){
+
+                RuleNode node = path[top];
+                int index = nextChild[top];
+
+                if(index >= node.getChildCount()){
+                    exitRule(listener, node);
+                    path[top--] = null;
+                    continue;
+                }
+
+                nextChild[top]++;
+                ParseTree child = node.getChild(index);
+
+                if(!(child instanceof RuleNode rule)){
+                    visitLeaf(listener, child);
+                    continue;
+                }
+
+                enterRule(listener, rule);
+
+                if(++top == path.length){
+                    path = Arrays.copyOf(path, top * 2);
+                    nextChild = Arrays.copyOf(nextChild, top * 2);
+                }
+
+                path[top] = rule;
+                nextChild[top] = 0;
+            }
+        }
+
+        private static void visitLeaf(ParseTreeListener listener, ParseTree leaf){
+
+            if(leaf instanceof ErrorNode error){
+                listener.visitErrorNode(error);
+            }
+            else if(leaf instanceof TerminalNode terminal){
+                listener.visitTerminal(terminal);
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import pl.com.example.grammar.JavaLexer;
+import pl.com.example.grammar.JavaParser;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe pool of lexer and parser instances.
+ * Generated recognizers keep their DFA and prediction context cache in static fields,
+ * so every pooled instance feeds and reads the same warmed-up state. The pool tracks
+ * how often a parse was served entirely by already known DFA states, which shows
+ * when the DFA is saturated.
+ */
+public class ParserPool {
+
+    private static final DFA[] PARSER_DFA = new JavaParser(null).getInterpreter().decisionToDFA;
+    private static final DFA[] LEXER_DFA = new JavaLexer(null).getInterpreter().decisionToDFA;
+
+    private final ConcurrentLinkedQueue<PooledParser> idle = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder instanceHits = new LongAdder();
+    private final LongAdder instanceMisses = new LongAdder();
+    private final LongAdder dfaHits = new LongAdder();
+    private final LongAdder dfaMisses = new LongAdder();
+    private final LongAdder dfaStatesAdded = new LongAdder();
+
+    /**
+     * Takes idle lexer and parser pair or creates a new one
+     */
+    public PooledParser borrow(){
+
+        PooledParser pooled = idle.poll();
+
+        if(pooled != null){
+            instanceHits.increment();
+            return pooled;
+        }
+
+        instanceMisses.increment();
+
+        JavaLexer lexer = new JavaLexer(CharStreams.fromString(""));
+        return new PooledParser(lexer, new JavaParser(new CommonTokenStream(lexer)));
+    }
+
+    /**
+     * Returns borrowed pair to the pool
+     * @param pooled pair obtained from {@link #borrow()}
+     */
+    public void release(PooledParser pooled){
+        idle.offer(pooled);
+    }
+
+    /**
+     * Tokenizes input and parses it with the given mode, recording whether
+     * prediction had to create new DFA states
+     * @param input source to parse
+     * @param parseMode prediction strategy
+     */
+    public ParsedSource parse(CharStream input, ParseMode parseMode){
+        return parse(input, parseMode, Metrics.DISABLED);
+    }
+
+    /**
+     * Lexes and parses input with pooled parser, lexing and parsing are timed separately
+     * @param input source to parse
+     * @param parseMode prediction strategy
+     * @param metrics metrics of the parsed file
+     */
+    public ParsedSource parse(CharStream input, ParseMode parseMode, Metrics metrics){
+        return parse(lex(input, metrics), parseMode, metrics);
+    }
+
+    /**
+     * Tokenizes whole input with pooled lexer
+     * @param input source to tokenize
+     * @param metrics metrics of the file
+     */
+    public CommonTokenStream lex(CharStream input, Metrics metrics){
+
+        PooledParser pooled = borrow();
+
+        try {
+            long lexStart = metrics.start();
+            CommonTokenStream tokens = pooled.tokenize(input);
+            metrics.stop(Metrics.Phase.LEX, lexStart);
+            metrics.add(Metrics.Counter.TOKENS, tokens.size());
+
+            return tokens;
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Parses tokens obtained from {@link #lex(CharStream, Metrics)} with pooled parser
+     * @param tokens filled token stream
+     * @param parseMode prediction strategy
+     * @param metrics metrics of the file
+     */
+    public ParsedSource parse(CommonTokenStream tokens, ParseMode parseMode, Metrics metrics){
+        return parse(tokens, parseMode, metrics, null);
+    }
+
+    /**
+     * Parses tokens notifying the listener of rules as they are entered and exited
+     * @param tokens filled token stream
+     * @param parseMode prediction strategy
+     * @param metrics metrics of the file
+     * @param parseListener listener added to the parser for this parse only, may be null
+     */
+    public ParsedSource parse(CommonTokenStream tokens, ParseMode parseMode, Metrics metrics, ParseTreeListener parseListener){
+
+        PooledParser pooled = borrow();
+        RefactoringEvents.Parse event = new RefactoringEvents.Parse();
+        event.begin();
+
+        try {
+            pooled.parser.setTokenStream(tokens);
+
+            if(parseListener != null){
+                pooled.parser.addParseListener(parseListener);
+            }
+
+            // counting walks every DFA, only done when someone looks at the result
+            boolean countStates = metrics.isEnabled() || event.isEnabled();
+
+            long parseStart = metrics.start();
+            long statesBefore = countStates ? countDfaStates() : 0;
+            ParseMode.ParseOutcome outcome = parseMode.parse(pooled.parser);
+            long statesAdded = countStates ? countDfaStates() - statesBefore : 0;
+            metrics.stop(Metrics.Phase.PARSE, parseStart);
+
+            if(countStates){
+                if(statesAdded > 0){
+                    dfaMisses.increment();
+                    dfaStatesAdded.add(statesAdded);
+                }
+                else {
+                    dfaHits.increment();
+                }
+            }
+
+            event.end();
+
+            if(event.shouldCommit()){
+                event.file = tokens.getSourceName();
+                event.tokens = tokens.size();
+                event.llFallback = outcome.isFallbackUsed();
+                event.dfaStatesAdded = statesAdded;
+                event.commit();
+            }
+
+            return new ParsedSource(tokens, outcome);
+        } finally {
+            pooled.parser.removeParseListeners();
+            release(pooled);
+        }
+    }
+
+    /**
+     * Parses representative sources so that later parses find ready DFA states
+     * @param corpus files to parse, results are discarded
+     * @param parseMode prediction strategy used by the following run
+     */
+    public void warmUp(List<Path> corpus, ParseMode parseMode){
+
+        for(Path file : corpus){
+            try {
+                parse(CharStreams.fromPath(file, StandardCharsets.UTF_8), parseMode);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Counts states of shared lexer and parser DFAs. The value is read without locking,
+     * so under concurrent parsing it is only approximate
+     */
+    public static long countDfaStates(){
+
+        long states = 0;
+
+        for(DFA dfa : PARSER_DFA){
+            states += dfa.states.size();
+        }
+
+        for(DFA dfa : LEXER_DFA){
+            states += dfa.states.size();
+        }
+
+        return states;
+    }
+
+    static DFA[] sharedParserDfa(){
+        return PARSER_DFA;
+    }
+
+    public long getInstanceHits() {
+        return instanceHits.sum();
+    }
+
+    public long getInstanceMisses() {
+        return instanceMisses.sum();
+    }
+
+    public long getDfaHits() {
+        return dfaHits.sum();
+    }
+
+    public long getDfaMisses() {
+        return dfaMisses.sum();
+    }
+
+    public void print(PrintStream out){
+        out.printf("Parsers:          %d created, %d reused%n", getInstanceMisses(), getInstanceHits());
+
+        if(getDfaHits() + getDfaMisses() == 0){
+            // parses are counted only with metrics or JFR recording on
+            out.printf("DFA:              %d states total%n", countDfaStates());
+            return;
+        }
+
+        out.printf("DFA:              %d parses without new states, %d with (%d states added, %d total)%n",
+                getDfaHits(), getDfaMisses(), dfaStatesAdded.sum(), countDfaStates());
+    }
+
+    /**
+     * Lexer and parser pair reused between files
+     */
+    public static class PooledParser {
+
+        private final JavaLexer lexer;
+        private final JavaParser parser;
+
+        PooledParser(JavaLexer lexer, JavaParser parser) {
+            this.lexer = lexer;
+            this.parser = parser;
+        }
+
+        /**
+         * Resets the lexer to the new input. The returned stream is filled eagerly,
+         * so it stays valid after the pair is handed to another thread
+         * @param input source to tokenize
+         */
+        CommonTokenStream tokenize(CharStream input){
+
+            lexer.setInputStream(input);
+
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            tokens.fill();
+
+            return tokens;
+        }
+    }
+
+    /**
+     * Token stream and parse tree of single source
+     */
+    public static class ParsedSource {
+
+        private final CommonTokenStream tokens;
+        private final ParseMode.ParseOutcome outcome;
+
+        ParsedSource(CommonTokenStream tokens, ParseMode.ParseOutcome outcome) {
+            this.tokens = tokens;
+            this.outcome = outcome;
+        }
+
+        public CommonTokenStream getTokens() {
+            return tokens;
+        }
+
+        public ParseMode.ParseOutcome getOutcome() {
+            return outcome;
+        }
+    }
+}
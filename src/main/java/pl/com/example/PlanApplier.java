@@ -0,0 +1,86 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes source with the edits of a {@link RefactoringPlan} applied, in one pass over the source.
+ * Contents of edits are rendered straight into the output, extracted methods from their template.
+ * Needs only the source, not its tokens nor parse tree
+ */
+public final class PlanApplier {
+
+    // unchanged text is copied in chunks, so a large mapped source is never turned into one String
+    private static final int COPY_CHUNK = 8192;
+
+    private PlanApplier() {
+    }
+
+    /**
+     * @param plan edits of the source
+     * @param source source the plan was made for
+     * @param writer output, not closed
+     * @throws IllegalArgumentException when the size of the source differs from the planned one
+     */
+    public static void apply(RefactoringPlan plan, CharStream source, Writer writer) throws IOException {
+
+        if(source.size() != plan.getSourceSize()){
+            throw new IllegalArgumentException("Plan of " + plan.getSourceSize() + " code points does not match "
+                    + source.getSourceName() + " of " + source.size());
+        }
+
+        int position = 0;
+
+        for(RefactoringPlan.Edit edit : plan.getEdits()){
+
+            copy(source, position, edit.getStart(), writer);
+
+            if(edit.getContent() != null){
+                write(edit.getContent(), source, writer);
+            }
+
+            position = edit.getEnd();
+        }
+
+        copy(source, position, source.size(), writer);
+    }
+
+    /**
+     * Renders content of an edit
+     * @param content content of an edit of the plan
+     * @param source source the plan was made for, extracted expressions are read from it
+     * @param writer output, not closed
+     */
+    public static void write(RefactoringPlan.Content content, CharStream source, Writer writer) throws IOException {
+
+        if(content instanceof RefactoringPlan.Text text){
+            writer.write(text.getText());
+        }
+        else if(content instanceof RefactoringPlan.ExtractedMethod method){
+            String expression = source.getText(Interval.of(method.getExpressionStart(), method.getExpressionEnd() - 1));
+
+            MethodTemplates.boolMethod(method.getModifiers(), method.getName(), method.getParameterTypes(),
+                    method.getParameterNames(), expression).writeTo(writer);
+        }
+        else if(content instanceof RefactoringPlan.ExtractedCall call){
+            writer.write(call.getName());
+            writer.write('(');
+            writer.write(String.join(", ", call.getArguments()));
+            writer.write(')');
+        }
+        else {
+            RefactoringPlan.InlinedCall call = (RefactoringPlan.InlinedCall) content;
+
+            writer.write(call.isParenthesized() ? "(" + call.getExpression() + ")" : call.getExpression());
+        }
+    }
+
+    private static void copy(CharStream source, int from, int to, Writer writer) throws IOException {
+        for(int start = from; start < to; start += COPY_CHUNK){
+            writer.write(source.getText(Interval.of(start, Math.min(start + COPY_CHUNK, to) - 1)));
+        }
+    }
+}
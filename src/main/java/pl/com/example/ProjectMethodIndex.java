@@ -0,0 +1,714 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import pl.com.example.grammar.JavaParser;
+import pl.com.example.grammar.JavaParserBaseListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Persistent index of boolean predicates declared anywhere in the source tree.
+ * Only static methods callable from other files, i.e. not private, whose body is a single
+ * <code>return expression;</code> are indexed,
+ * and only when the expression refers to nothing but its parameters and <code>java.lang</code> types,
+ * so it means the same when copied into another file.
+ * The file is an open addressing hash table over signature keys followed by method records,
+ * it is memory-mapped and probed in place, so opening it costs nothing regardless of its size.
+ * <p>
+ * Keys: <code>package.Class.method(types)</code> and <code>package.Class.method/arity</code>, nested
+ * classes are named through their enclosing ones. The caller resolves the qualifier of a call, or
+ * the static import of an unqualified call, to the fully qualified class name. Keys shared by more than one method are stored
+ * as ambiguous and never resolve.
+ * <p>
+ * Header: magic, format version, table size and SHA-256 of the source roots and file list
+ * the index was built from, so adding, deleting or moving sources rebuilds it.
+ */
+public class ProjectMethodIndex {
+
+    private static final int MAGIC = 0x504d4958;
+    private static final int FORMAT_VERSION = 3;
+    private static final int SOURCES_HASH_OFFSET = 12;
+    private static final int SOURCES_HASH_SIZE = 32;
+    private static final int HEADER_SIZE = SOURCES_HASH_OFFSET + SOURCES_HASH_SIZE;
+    private static final String JAVA_LANG_PACKAGE = "java.lang.";
+    private static final int EMPTY_SLOT = 0;
+    private static final int AMBIGUOUS = -1;
+    private static final String BOOLEAN_TYPE = "boolean";
+
+    private final ByteBuffer buffer;
+    private final int tableSize;
+
+    private ProjectMethodIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.tableSize = buffer.getInt(8);
+    }
+
+    /**
+     * Maps existing index, or rebuilds it when it was built from other roots or files,
+     * or any source under roots is newer than the index file
+     * @param file index file
+     * @param roots source roots
+     * @param parserPool parsers used for rebuilding
+     * @param parseMode prediction strategy used for rebuilding
+     * @param threads parallelism of rebuilding
+     */
+    public static ProjectMethodIndex openOrBuild(Path file, List<Path> roots, ParserPool parserPool, ParseMode parseMode, int threads){
+
+        List<Path> sources = roots.stream().flatMap(root -> BatchRefactorer.discoverSources(root).stream()).toList();
+        byte[] sourcesHash = sourcesHash(roots, sources);
+
+        try {
+            if(!isUpToDate(file, sources, sourcesHash)){
+                write(file, collect(sources, parserPool, parseMode, threads), sourcesHash);
+            }
+
+            return open(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Maps index file into memory
+     * @param file index file
+     */
+    public static ProjectMethodIndex open(Path file) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION){
+                throw new IOException("Not a method index: " + file);
+            }
+
+            return new ProjectMethodIndex(buffer);
+        }
+    }
+
+    /**
+     * SHA-256 of the index content, changes whenever any indexed predicate does
+     */
+    public String getFingerprint(){
+
+        MessageDigest digest = ResultCache.sha256();
+        digest.update(buffer.duplicate().clear());
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Finds predicate called with arguments of given types
+     * @param qualifier fully qualified name of the class the method is called on, for unqualified calls
+     *                  of the class they are statically imported from
+     * @param name method name
+     * @param argumentTypes argument types, null for unknown ones
+     */
+    public Entry find(String qualifier, String name, List<String> argumentTypes){
+
+        String prefix = qualifier + '.' + name;
+
+        if(!argumentTypes.contains(null)){
+            Entry entry = lookup(MethodIndex.signatureKey(prefix, argumentTypes));
+
+            if(entry != null){
+                return entry;
+            }
+        }
+
+        Entry entry = lookup(arityKey(prefix, argumentTypes.size()));
+
+        if(entry == null){
+            return null;
+        }
+
+        for(int i = 0; i < argumentTypes.size(); i++){
+            if(argumentTypes.get(i) != null && !argumentTypes.get(i).equals(entry.parameterTypes.get(i))){
+                return null;
+            }
+        }
+
+        return entry;
+    }
+
+    private Entry lookup(String key){
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int mask = tableSize - 1;
+
+        for(int slot = hash(keyBytes) & mask; ; slot = (slot + 1) & mask){
+
+            int keyOffset = buffer.getInt(HEADER_SIZE + slot * Integer.BYTES);
+
+            if(keyOffset == EMPTY_SLOT){
+                return null;
+            }
+
+            if(keyEquals(keyOffset, keyBytes)){
+                int entryOffset = buffer.getInt(keyOffset + Integer.BYTES + keyBytes.length);
+                return entryOffset == AMBIGUOUS ? null : readEntry(entryOffset);
+            }
+        }
+    }
+
+    private boolean keyEquals(int offset, byte[] key){
+
+        if(buffer.getInt(offset) != key.length){
+            return false;
+        }
+
+        for(int i = 0; i < key.length; i++){
+            if(buffer.get(offset + Integer.BYTES + i) != key[i]){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private Entry readEntry(int offset){
+
+        ByteBuffer record = buffer.duplicate().position(offset);
+
+        String source = readString(record);
+        String className = readString(record);
+        String methodName = readString(record);
+        int fileOffset = record.getInt();
+        int startToken = record.getInt();
+        int stopToken = record.getInt();
+
+        int parameterCount = record.getInt();
+        List<String> parameterNames = new ArrayList<>(parameterCount);
+        List<String> parameterTypes = new ArrayList<>(parameterCount);
+
+        for(int i = 0; i < parameterCount; i++){
+            parameterNames.add(readString(record));
+            parameterTypes.add(readString(record));
+        }
+
+        int tokenCount = record.getInt();
+        List<String> tokenTexts = new ArrayList<>(tokenCount);
+        List<Boolean> identifiers = new ArrayList<>(tokenCount);
+
+        for(int i = 0; i < tokenCount; i++){
+            identifiers.add(record.get() != 0);
+            tokenTexts.add(readString(record));
+        }
+
+        return new Entry(source, className, methodName, parameterNames, parameterTypes,
+                fileOffset, startToken, stopToken, tokenTexts, identifiers);
+    }
+
+    private static boolean isUpToDate(Path file, List<Path> sources, byte[] sourcesHash) throws IOException {
+
+        if(!Files.isRegularFile(file) || Files.size(file) < HEADER_SIZE){
+            return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+
+            if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION){
+                return false;
+            }
+
+            in.readInt();
+            byte[] storedHash = in.readNBytes(SOURCES_HASH_SIZE);
+
+            if(!Arrays.equals(storedHash, sourcesHash)){
+                return false;
+            }
+        }
+
+        long indexModified = Files.getLastModifiedTime(file).toMillis();
+
+        for(Path source : sources){
+            if(Files.getLastModifiedTime(source).toMillis() > indexModified){
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * SHA-256 of the roots and of the files found under them, in discovery order
+     */
+    private static byte[] sourcesHash(List<Path> roots, List<Path> sources){
+
+        MessageDigest digest = ResultCache.sha256();
+
+        for(Path root : roots){
+            digest.update(root.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        digest.update((byte) 0);
+
+        for(Path source : sources){
+            digest.update(source.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Parses the sources and collects indexable predicates
+     */
+    static List<Entry> collect(List<Path> sources, ParserPool parserPool, ParseMode parseMode, int threads){
+
+        ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        try {
+            pool.submit(() -> sources.stream()
+                    .parallel()
+                    .forEach(source -> entries.addAll(collect(source, parserPool, parseMode)))
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing((Entry entry) -> entry.source).thenComparingInt(entry -> entry.fileOffset));
+
+        return sorted;
+    }
+
+    private static List<Entry> collect(Path source, ParserPool parserPool, ParseMode parseMode){
+
+        try {
+            ParserPool.ParsedSource parsed = parserPool.parse(CharStreams.fromPath(source, StandardCharsets.UTF_8), parseMode);
+            PredicateCollector collector = new PredicateCollector(source.toString(), parsed.getTokens());
+
+            ParseTrees.WALKER.walk(collector, parsed.getOutcome().getTree());
+
+            return collector.entries;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static void write(Path file, List<Entry> entries, byte[] sourcesHash) throws IOException {
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        Map<String, Integer> keys = new LinkedHashMap<>();
+        List<Integer> entryOffsets = new ArrayList<>();
+
+        for(Entry entry : entries){
+            entryOffsets.add(out.size());
+            writeEntry(out, entry);
+        }
+
+        for(int i = 0; i < entries.size(); i++){
+            for(String key : entries.get(i).keys()){
+                int offset = entryOffsets.get(i);
+                keys.merge(key, offset, (previous, current) -> previous.equals(current) ? previous : AMBIGUOUS);
+            }
+        }
+
+        int tableSize = Integer.highestOneBit(Math.max(keys.size(), 1) * 2) * 2;
+        int keysStart = HEADER_SIZE + tableSize * Integer.BYTES;
+        int entriesStart = keysStart;
+
+        ByteArrayOutputStream keyRecords = new ByteArrayOutputStream();
+        DataOutputStream keyOut = new DataOutputStream(keyRecords);
+        List<byte[]> keyBytes = new ArrayList<>();
+
+        for(String key : keys.keySet()){
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            keyBytes.add(bytes);
+            entriesStart += Integer.BYTES + bytes.length + Integer.BYTES;
+        }
+
+        int[] table = new int[tableSize];
+        int keyOffset = keysStart;
+        int keyIndex = 0;
+
+        for(Map.Entry<String, Integer> key : keys.entrySet()){
+            byte[] bytes = keyBytes.get(keyIndex++);
+            int slot = hash(bytes) & (tableSize - 1);
+
+            while(table[slot] != EMPTY_SLOT){
+                slot = (slot + 1) & (tableSize - 1);
+            }
+
+            table[slot] = keyOffset;
+
+            keyOut.writeInt(bytes.length);
+            keyOut.write(bytes);
+            keyOut.writeInt(key.getValue() == AMBIGUOUS ? AMBIGUOUS : entriesStart + key.getValue());
+
+            keyOffset += Integer.BYTES + bytes.length + Integer.BYTES;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(keysStart);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(tableSize).put(sourcesHash);
+
+        for(int slot : table){
+            header.putInt(slot);
+        }
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try (var channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.write(header.flip());
+            channel.write(ByteBuffer.wrap(keyRecords.toByteArray()));
+            channel.write(ByteBuffer.wrap(records.toByteArray()));
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+
+        writeString(out, entry.source);
+        writeString(out, entry.className);
+        writeString(out, entry.methodName);
+        out.writeInt(entry.fileOffset);
+        out.writeInt(entry.startToken);
+        out.writeInt(entry.stopToken);
+
+        out.writeInt(entry.parameterNames.size());
+
+        for(int i = 0; i < entry.parameterNames.size(); i++){
+            writeString(out, entry.parameterNames.get(i));
+            writeString(out, entry.parameterTypes.get(i));
+        }
+
+        out.writeInt(entry.tokenTexts.size());
+
+        for(int i = 0; i < entry.tokenTexts.size(); i++){
+            out.writeByte(entry.identifiers.get(i) ? 1 : 0);
+            writeString(out, entry.tokenTexts.get(i));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer record){
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // FNV-1a, stable across JVMs unlike String.hashCode of arbitrary implementations
+    private static int hash(byte[] bytes){
+
+        int hash = 0x811c9dc5;
+
+        for(byte value : bytes){
+            hash ^= value & 0xff;
+            hash *= 0x01000193;
+        }
+
+        return hash & Integer.MAX_VALUE;
+    }
+
+    private static String arityKey(String prefix, int arity){
+        return prefix + '/' + arity;
+    }
+
+    /**
+     * Indexed predicate: its signature and return expression tokens
+     */
+    public static class Entry {
+
+        private final String source;
+        private final String className;
+        private final String methodName;
+        private final List<String> parameterNames;
+        private final List<String> parameterTypes;
+        private final int fileOffset;
+        private final int startToken;
+        private final int stopToken;
+        private final List<String> tokenTexts;
+        private final List<Boolean> identifiers;
+
+        Entry(
+                String source,
+                String className,
+                String methodName,
+                List<String> parameterNames,
+                List<String> parameterTypes,
+                int fileOffset,
+                int startToken,
+                int stopToken,
+                List<String> tokenTexts,
+                List<Boolean> identifiers
+        ) {
+            this.source = source;
+            this.className = className;
+            this.methodName = methodName;
+            this.parameterNames = parameterNames;
+            this.parameterTypes = parameterTypes;
+            this.fileOffset = fileOffset;
+            this.startToken = startToken;
+            this.stopToken = stopToken;
+            this.tokenTexts = tokenTexts;
+            this.identifiers = identifiers;
+        }
+
+        private List<String> keys(){
+
+            List<String> keys = new ArrayList<>();
+            String qualified = className + '.' + methodName;
+
+            keys.add(MethodIndex.signatureKey(qualified, parameterTypes));
+            keys.add(arityKey(qualified, parameterTypes.size()));
+
+            return keys;
+        }
+
+        /**
+         * Return expression with parameters replaced by call arguments
+         * @param arguments argument texts in parameter order
+         */
+        public String inline(List<String> arguments){
+
+            StringBuilder result = new StringBuilder();
+
+            for(int i = 0; i < tokenTexts.size(); i++){
+                String text = tokenTexts.get(i);
+                int parameter = identifiers.get(i) ? parameterNames.indexOf(text) : -1;
+
+                result.append(parameter < 0 ? text : arguments.get(parameter));
+            }
+
+            return result.toString();
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Fully qualified name of the declaring class
+         */
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public List<String> getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public int getFileOffset() {
+            return fileOffset;
+        }
+
+        public int getStartToken() {
+            return startToken;
+        }
+
+        public int getStopToken() {
+            return stopToken;
+        }
+    }
+
+    /**
+     * Collects indexable predicates of one compilation unit
+     */
+    private static class PredicateCollector extends JavaParserBaseListener {
+
+        private final String source;
+        private final CommonTokenStream tokens;
+        // fully qualified names of the enclosing classes, innermost first
+        private final Deque<String> classNames = new ArrayDeque<>();
+        private String packageName = "";
+        private final List<Entry> entries = new ArrayList<>();
+
+        private PredicateCollector(String source, CommonTokenStream tokens) {
+            this.source = source;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public void enterPackageDeclaration(JavaParser.PackageDeclarationContext ctx) {
+            packageName = ctx.qualifiedName().getText();
+        }
+
+        @Override
+        public void enterClassDeclaration(JavaParser.ClassDeclarationContext ctx) {
+
+            String outer = classNames.isEmpty() ? packageName : classNames.peek();
+            classNames.push(outer.isEmpty() ? ctx.identifier().getText() : outer + '.' + ctx.identifier().getText());
+        }
+
+        @Override
+        public void exitClassDeclaration(JavaParser.ClassDeclarationContext ctx) {
+            classNames.pop();
+        }
+
+        @Override
+        public void enterMethodDeclaration(JavaParser.MethodDeclarationContext ctx) {
+
+            if(classNames.isEmpty()
+                    || !BOOLEAN_TYPE.equals(ctx.typeTypeOrVoid().getText())
+                    || ctx.methodBody().block() == null
+                    || !(ctx.getParent().getParent() instanceof JavaParser.ClassBodyDeclarationContext declaration)
+            ){
+                return;
+            }
+
+            // an instance method is not called through its class, a private one not from another file
+            if(!hasModifier(declaration, JavaParser.STATIC) || hasModifier(declaration, JavaParser.PRIVATE)){
+                return;
+            }
+
+            List<JavaParser.BlockStatementContext> statements = ctx.methodBody().block().blockStatement();
+
+            if(statements.size() != 1
+                    || statements.get(0).statement() == null
+                    || statements.get(0).statement().RETURN() == null
+                    || statements.get(0).statement().expression().isEmpty()
+            ){
+                return;
+            }
+
+            JavaParser.ExpressionContext expression = statements.get(0).statement().expression(0);
+            List<String> parameterNames = new ArrayList<>();
+
+            if(ctx.formalParameters().formalParameterList() != null){
+                var parameters = ctx.formalParameters().formalParameterList();
+
+                for(var parameter : parameters.formalParameter()){
+                    parameterNames.add(parameter.variableDeclaratorId().identifier().getText());
+                }
+
+                if(parameters.lastFormalParameter() != null){
+                    parameterNames.add(parameters.lastFormalParameter().variableDeclaratorId().identifier().getText());
+                }
+            }
+
+            if(hasFreeReferences(expression, parameterNames)){
+                return;
+            }
+
+            List<String> tokenTexts = new ArrayList<>();
+            List<Boolean> identifiers = new ArrayList<>();
+
+            for(Token token : tokens.get(expression.start.getTokenIndex(), expression.stop.getTokenIndex())){
+                tokenTexts.add(token.getText());
+                identifiers.add(token.getType() == JavaParser.IDENTIFIER);
+            }
+
+            Entry entry = new Entry(
+                    source,
+                    classNames.peek(),
+                    ctx.identifier().getText(),
+                    parameterNames,
+                    MethodIndex.parameterTypes(ctx),
+                    expression.start.getStartIndex(),
+                    expression.start.getTokenIndex(),
+                    expression.stop.getTokenIndex(),
+                    tokenTexts,
+                    identifiers
+            );
+
+            entries.add(entry);
+        }
+
+        /**
+         * Checks if the expression refers to anything besides its parameters and <code>java.lang</code>
+         * types: fields, other methods of its class, <code>this</code>, types needing an import.
+         * Such an expression would not resolve, or would resolve differently, in the calling file
+         */
+        private static boolean hasFreeReferences(JavaParser.ExpressionContext expression, List<String> parameterNames){
+
+            ExpressionVariables variables = ExpressionVariables.collect(expression);
+
+            for(String name : variables.getNames()){
+                if(!parameterNames.contains(name) && !(variables.getQualifiedRoots().contains(name) && isJavaLangType(name))){
+                    return true;
+                }
+            }
+
+            Deque<ParseTree> pending = new ArrayDeque<>();
+            pending.push(expression);
+
+            while(!pending.isEmpty()){
+
+                ParseTree node = pending.pop();
+
+                // unqualified call of a method of the declaring class
+                if(node instanceof JavaParser.ExpressionContext call && call.bop == null && call.methodCall() != null){
+                    return true;
+                }
+
+                if(node instanceof JavaParser.PrimaryContext primary && (primary.THIS() != null || primary.SUPER() != null)){
+                    return true;
+                }
+
+                for(int i = node.getChildCount() - 1; i >= 0; i--){
+                    pending.push(node.getChild(i));
+                }
+            }
+
+            return false;
+        }
+
+        private static boolean isJavaLangType(String name){
+            try {
+                Class.forName(JAVA_LANG_PACKAGE + name, false, ProjectMethodIndex.class.getClassLoader());
+                return true;
+            } catch (ClassNotFoundException | LinkageError e) {
+                return false;
+            }
+        }
+
+        private static boolean hasModifier(JavaParser.ClassBodyDeclarationContext declaration, int modifierToken){
+
+            for(var modifier : declaration.modifier()){
+                if(modifier.classOrInterfaceModifier() != null
+                        && modifier.classOrInterfaceModifier().start.getType() == modifierToken){
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package pl.com.example;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line options of batch refactoring run
+ */
+public class RefactorOptions {
+
+    public static final String REFACTORED_SUFFIX = ".refactored";
+    private static final String STANDARD_OUTPUT = "-";
+    private static final long BYTES_IN_MEGABYTE = 1024L * 1024L;
+    public static final String USAGE = """
+            Usage: [options] ROOT...
+              --refactoring extract|inline   refactoring to apply (default inline), a comma separated
+                                             list, e.g. inline,extract, applies all in a single walk, in order
+              --threshold N                  operands needed to extract if condition (default 2)
+              --threads N                    worker threads (default: available cores)
+              --out DIR                      mirror results under DIR instead of writing next to sources
+              --parse-mode ll|sll-then-ll    prediction strategy (default sll-then-ll)
+              --warmup PATH                  parse sources under PATH before the run to warm the DFA
+              --dfa-snapshot FILE            restore parser DFA from FILE at start and save it at the end
+              --method-index FILE            inline predicates declared in other files using index FILE,
+                                             rebuilt when missing or older than the sources
+              --metrics                      print time spent in each phase and counts of refactored elements
+              --metrics-json FILE            also write metrics of every file to FILE as JSON
+              --no-prefilter                 parse every file, even when its tokens show nothing to refactor
+              --streaming                    refactor members while parsing and drop their parse trees,
+                                             memory is bounded by the largest member (extract only)
+              --cache DIR                    reuse results of files refactored before with the same
+                                             content and configuration, stored under DIR together
+                                             with tokens of files lexed before
+              --cache-size MB                size limit of the cache, least recently used results
+                                             and tokens are evicted (default 1024)
+              --mmap-threshold MB            read UTF-8 files of at least MB megabytes through memory
+                                             mapping instead of decoding them into the heap (default 64)
+              --save-plans                   also write the planned edits of every changed file next to
+                                             its output as OUTPUT.plan, files restored from cache have none
+              --diff FILE|-                  write changes of all files as one unified diff to FILE or
+                                             to standard output instead of writing refactored files""";
+
+    private final List<Path> roots = new ArrayList<>();
+    private Path outputRoot;
+    private List<Refactoring> refactorings = List.of(Refactoring.INLINE);
+    private int expandedEnoughExpressionIdentifier = 2;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private ParseMode parseMode = ParseMode.SLL_THEN_LL;
+    private final List<Path> warmUpRoots = new ArrayList<>();
+    private Path dfaSnapshot;
+    private Path methodIndex;
+    private boolean metrics;
+    private Path metricsJson;
+    private boolean prefilter = true;
+    private boolean streaming;
+    private Path cacheDirectory;
+    private long cacheSizeBytes = 1024L * BYTES_IN_MEGABYTE;
+    private long mappedInputBytes = 64L * BYTES_IN_MEGABYTE;
+    private boolean savePlans;
+    private Path diff;
+
+    /**
+     * Parses command line arguments, see {@link #USAGE}
+     * @param args command line arguments
+     */
+    public static RefactorOptions parse(String[] args){
+
+        RefactorOptions options = new RefactorOptions();
+
+        for(int i = 0; i < args.length; i++){
+            switch (args[i]) {
+                case "--refactoring" -> options.refactorings = Refactoring.listFromNames(value(args, ++i));
+                case "--threshold" -> options.expandedEnoughExpressionIdentifier = Integer.parseInt(value(args, ++i));
+                case "--threads" -> options.threads = Integer.parseInt(value(args, ++i));
+                case "--out" -> options.outputRoot = Path.of(value(args, ++i));
+                case "--parse-mode" -> options.parseMode = ParseMode.fromName(value(args, ++i));
+                case "--warmup" -> options.warmUpRoots.add(Path.of(value(args, ++i)));
+                case "--dfa-snapshot" -> options.dfaSnapshot = Path.of(value(args, ++i));
+                case "--method-index" -> options.methodIndex = Path.of(value(args, ++i));
+                case "--metrics" -> options.metrics = true;
+                case "--metrics-json" -> options.metricsJson = Path.of(value(args, ++i));
+                case "--no-prefilter" -> options.prefilter = false;
+                case "--streaming" -> options.streaming = true;
+                case "--cache" -> options.cacheDirectory = Path.of(value(args, ++i));
+                case "--cache-size" -> options.cacheSizeBytes = Long.parseLong(value(args, ++i)) * BYTES_IN_MEGABYTE;
+                case "--mmap-threshold" -> options.mappedInputBytes = Long.parseLong(value(args, ++i)) * BYTES_IN_MEGABYTE;
+                case "--save-plans" -> options.savePlans = true;
+                case "--diff" -> options.diff = Path.of(value(args, ++i));
+                default -> {
+                    if(args[i].startsWith("--")){
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                    }
+                    options.roots.add(Path.of(args[i]));
+                }
+            }
+        }
+
+        if(options.roots.isEmpty()){
+            throw new IllegalArgumentException("At least one source root is required");
+        }
+
+        if(options.threads < 1){
+            throw new IllegalArgumentException("--threads must be positive");
+        }
+
+        if(options.cacheSizeBytes < 0){
+            throw new IllegalArgumentException("--cache-size must not be negative");
+        }
+
+        if(options.streaming && !options.refactorings.stream().allMatch(StreamingRefactoringListener::supports)){
+            throw new IllegalArgumentException("--streaming supports only the extract refactoring");
+        }
+
+        if(options.diff != null && (options.cacheDirectory != null || options.savePlans)){
+            throw new IllegalArgumentException("--diff writes no refactored files, it cannot be combined with --cache nor --save-plans");
+        }
+
+        return options;
+    }
+
+    private static String value(String[] args, int index){
+
+        if(index >= args.length){
+            throw new IllegalArgumentException("Missing value for option: " + args[index - 1]);
+        }
+
+        return args[index];
+    }
+
+    /**
+     * Resolves where the refactored version of the file should be written.
+     * With output root the source tree is mirrored under it, otherwise
+     * the result is written next to the source file
+     * @param root source root the file was discovered in
+     * @param file source file
+     */
+    public Path resolveOutput(Path root, Path file){
+
+        if(outputRoot == null){
+            return file.resolveSibling(file.getFileName() + REFACTORED_SUFFIX);
+        }
+
+        Path mirrored = root.equals(file) ? file.getFileName() : root.relativize(file);
+
+        if(roots.size() > 1 && root.getFileName() != null){
+            mirrored = root.getFileName().resolve(mirrored);
+        }
+
+        return outputRoot.resolve(mirrored);
+    }
+
+    public List<Path> getRoots() {
+        return roots;
+    }
+
+    public Path getOutputRoot() {
+        return outputRoot;
+    }
+
+    /**
+     * Refactorings in the order their listeners are notified
+     */
+    public List<Refactoring> getRefactorings() {
+        return refactorings;
+    }
+
+    public int getExpandedEnoughExpressionIdentifier() {
+        return expandedEnoughExpressionIdentifier;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    public List<Path> getWarmUpRoots() {
+        return warmUpRoots;
+    }
+
+    public Path getDfaSnapshot() {
+        return dfaSnapshot;
+    }
+
+    public Path getMethodIndex() {
+        return methodIndex;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metrics || metricsJson != null;
+    }
+
+    public Path getMetricsJson() {
+        return metricsJson;
+    }
+
+    /**
+     * Whether files are checked by {@link RefactoringPrefilter} before parsing
+     */
+    public boolean isPrefilter() {
+        return prefilter;
+    }
+
+    /**
+     * Whether files are refactored by {@link StreamingRefactoringListener} during parsing
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Directory of {@link ResultCache}, null when results are not cached
+     */
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getCacheSizeBytes() {
+        return cacheSizeBytes;
+    }
+
+    /**
+     * Files of at least this size are read by {@link MappedCharStream}
+     */
+    public long getMappedInputBytes() {
+        return mappedInputBytes;
+    }
+
+    /**
+     * Whether {@link RefactoringPlan}s of changed files are written next to their outputs
+     */
+    public boolean isSavePlans() {
+        return savePlans;
+    }
+
+    /**
+     * File the unified diff is written to, null when refactored files are written instead
+     */
+    public Path getDiff() {
+        return diff;
+    }
+
+    public boolean isDiffToStandardOutput() {
+        return diff != null && diff.toString().equals(STANDARD_OUTPUT);
+    }
+}
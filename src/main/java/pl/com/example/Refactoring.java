@@ -0,0 +1,83 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Refactorings which can be applied to a source file
+ */
+public enum Refactoring {
+
+    EXTRACT(Metrics.Counter.EXTRACTIONS) {
+        @Override
+        public RefactoringListener createListener(EditLog edits, LocalSymbols symbols, RefactorOptions options, ProjectMethodIndex projectIndex) {
+            return new ExtractBoolStatementsListener(edits, symbols, options.getExpandedEnoughExpressionIdentifier());
+        }
+    },
+
+    INLINE(Metrics.Counter.INLINES) {
+        @Override
+        public RefactoringListener createListener(EditLog edits, LocalSymbols symbols, RefactorOptions options, ProjectMethodIndex projectIndex) {
+            return new InlineBoolStatementListener(edits, symbols, projectIndex);
+        }
+    };
+
+    private final Metrics.Counter appliedCounter;
+
+    Refactoring(Metrics.Counter appliedCounter) {
+        this.appliedCounter = appliedCounter;
+    }
+
+    /**
+     * Counter of applied refactorings, see {@link RefactoringListener#getAppliedCount()}
+     */
+    public Metrics.Counter getAppliedCounter() {
+        return appliedCounter;
+    }
+
+    /**
+     * Creates listener recording edits into given log
+     * @param edits edit log, possibly shared with other refactorings
+     * @param symbols symbol table the listener maintains, or read-only view of a table maintained elsewhere
+     * @param options refactoring options
+     * @param projectIndex predicates declared across the source tree, may be null
+     */
+    public abstract RefactoringListener createListener(EditLog edits, LocalSymbols symbols, RefactorOptions options, ProjectMethodIndex projectIndex);
+
+    /**
+     * Creates listener with its own edit log and symbol table
+     * @param tokens tokens of the refactored file
+     * @param options refactoring options
+     * @param projectIndex predicates declared across the source tree, may be null
+     */
+    public RefactoringListener createListener(CommonTokenStream tokens, RefactorOptions options, ProjectMethodIndex projectIndex) {
+        return createListener(new EditLog(tokens), new LocalSymbols(), options, projectIndex);
+    }
+
+    public static Refactoring fromName(String name){
+        return valueOf(name.toUpperCase());
+    }
+
+    /**
+     * Parses comma separated list of refactorings, e.g. <code>extract,inline</code>
+     * @param names refactoring names
+     */
+    public static List<Refactoring> listFromNames(String names){
+
+        List<Refactoring> refactorings = new ArrayList<>();
+
+        for(String name : names.split(",")){
+            Refactoring refactoring = fromName(name.trim());
+
+            if(refactorings.contains(refactoring)){
+                throw new IllegalArgumentException("Refactoring listed twice: " + name);
+            }
+
+            refactorings.add(refactoring);
+        }
+
+        return refactorings;
+    }
+}
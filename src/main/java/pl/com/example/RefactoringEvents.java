@@ -0,0 +1,104 @@
+package pl.com.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the refactoring pipeline. Every event carries the file,
+ * so pathological files can be found straight from a recording. Events are disabled
+ * unless a recording enables them, e.g. <code>-XX:StartFlightRecording</code>
+ */
+public final class RefactoringEvents {
+
+    private static final String CATEGORY = "RefactorJava";
+
+    private RefactoringEvents() {
+    }
+
+    @Name("pl.com.example.Parse")
+    @Label("Parse")
+    @Description("Parsing of a lexed compilation unit")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Parse extends Event {
+
+        @Label("File")
+        public String file;
+
+        @Label("Tokens")
+        public int tokens;
+
+        @Label("LL Fallback")
+        @Description("SLL prediction failed and the file was reparsed with full LL")
+        public boolean llFallback;
+
+        @Label("DFA States Added")
+        @Description("States the parse added to the shared DFA")
+        public long dfaStatesAdded;
+    }
+
+    @Name("pl.com.example.Walk")
+    @Label("Walk")
+    @Description("Parse tree walk with a refactoring listener")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Walk extends Event {
+
+        @Label("File")
+        public String file;
+
+        @Label("Refactoring")
+        public String refactoring;
+
+        @Label("Applied")
+        public int applied;
+    }
+
+    @Name("pl.com.example.Extraction")
+    @Label("Extraction")
+    @Description("If condition extracted to a boolean method")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Extraction extends Event {
+
+        @Label("File")
+        public String file;
+
+        @Label("Method")
+        public String method;
+
+        @Label("Start Token")
+        public int startToken;
+
+        @Label("Stop Token")
+        public int stopToken;
+    }
+
+    @Name("pl.com.example.Inline")
+    @Label("Inline")
+    @Description("Boolean method call inlined into an if condition")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class Inline extends Event {
+
+        @Label("File")
+        public String file;
+
+        @Label("Method")
+        public String method;
+
+        @Label("Start Token")
+        public int startToken;
+
+        @Label("Stop Token")
+        public int stopToken;
+
+        @Label("Other File")
+        @Description("Method declared in another file, resolved through the project method index")
+        public boolean indexed;
+    }
+}
@@ -0,0 +1,21 @@
+package pl.com.example;
+
+import pl.com.example.grammar.JavaParserListener;
+
+/**
+ * Listener performing a refactoring by recording edits in its {@link EditLog}
+ */
+public interface RefactoringListener extends JavaParserListener {
+
+    EditLog getRewriter();
+
+    /**
+     * Number of if statements seen during the walk
+     */
+    int getIfStatementCount();
+
+    /**
+     * Number of refactorings applied during the walk
+     */
+    int getAppliedCount();
+}
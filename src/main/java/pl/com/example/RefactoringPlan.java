@@ -0,0 +1,514 @@
+package pl.com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Edits the refactorings decided to make in one source file, made by {@link EditLog#toPlan()}
+ * once the file has been analysed and written by {@link PlanApplier}.
+ * <p>
+ * The plan is immutable and does not refer to tokens nor parse trees: edits are ranges of
+ * code points of the source, ordered as they appear in the output, each with the {@link Content}
+ * written in place of its range. Content is kept as the refactoring decided it, e.g. the name,
+ * modifiers and parameters of an extracted method together with the range of its expression,
+ * and is rendered from templates only when {@link PlanApplier} writes the output.
+ * So plans stay small, can be stored, reviewed, filtered and applied later to the same source.
+ * <p>
+ * Binary layout: header of magic, format version, code point count of the source and edit count,
+ * then per edit its kind, start, end, owner and, unless it deletes, content tag and fields;
+ * strings are UTF-8 prefixed by byte length, -1 standing for null, lists are prefixed by size.
+ */
+public final class RefactoringPlan {
+
+    private static final int MAGIC = 0x504c414e;
+    private static final int FORMAT_VERSION = 2;
+    // content tags of the binary form
+    private static final int TEXT = 0;
+    private static final int EXTRACTED_METHOD = 1;
+    private static final int EXTRACTED_CALL = 2;
+    private static final int INLINED_CALL = 3;
+
+    private final String sourceName;
+    private final int sourceSize;
+    private final List<Edit> edits;
+
+    /**
+     * @param sourceName name of the source the plan was made for
+     * @param sourceSize code points of the source
+     * @param edits edits in output order
+     * @throws IllegalArgumentException when edits overlap, are not ordered or lie outside the source,
+     * or refer to text outside the source
+     */
+    public RefactoringPlan(String sourceName, int sourceSize, List<Edit> edits) {
+
+        int end = 0;
+
+        for(Edit edit : edits){
+            if(edit.start < end || edit.end > sourceSize){
+                throw new IllegalArgumentException("Edit " + edit + " overlaps previous edit or lies outside the source");
+            }
+            if(edit.content instanceof ExtractedMethod method && method.expressionEnd > sourceSize){
+                throw new IllegalArgumentException("Edit " + edit + " extracts expression outside the source");
+            }
+            end = edit.end;
+        }
+
+        this.sourceName = sourceName;
+        this.sourceSize = sourceSize;
+        this.edits = Collections.unmodifiableList(new ArrayList<>(edits));
+    }
+
+    /**
+     * Plan keeping only the matching edits, e.g. those of one refactoring
+     * @param filter edits to keep
+     */
+    public RefactoringPlan filter(Predicate<Edit> filter){
+        return new RefactoringPlan(sourceName, sourceSize, edits.stream().filter(filter).toList());
+    }
+
+    public String getSourceName() {
+        return sourceName;
+    }
+
+    public int getSourceSize() {
+        return sourceSize;
+    }
+
+    public List<Edit> getEdits() {
+        return edits;
+    }
+
+    public boolean isEmpty(){
+        return edits.isEmpty();
+    }
+
+    /**
+     * Writes the plan in binary form
+     * @param out output, not closed
+     */
+    public void writeTo(OutputStream out) throws IOException {
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        writeString(data, sourceName);
+        data.writeInt(sourceSize);
+        data.writeInt(edits.size());
+
+        for(Edit edit : edits){
+            data.writeByte(edit.kind.ordinal());
+            data.writeInt(edit.start);
+            data.writeInt(edit.end);
+            writeString(data, edit.owner);
+
+            if(edit.content != null){
+                writeContent(data, edit.content);
+            }
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Reads plan written by {@link #writeTo(OutputStream)}
+     * @param in input, not closed
+     * @throws IOException when the input is not a plan of this format version
+     */
+    public static RefactoringPlan readFrom(InputStream in) throws IOException {
+
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        if(data.readInt() != MAGIC || data.readInt() != FORMAT_VERSION){
+            throw new IOException("Not a refactoring plan of version " + FORMAT_VERSION);
+        }
+
+        String sourceName = readString(data);
+        int sourceSize = data.readInt();
+        int count = data.readInt();
+        List<Edit> edits = new ArrayList<>(Math.max(count, 0));
+
+        for(int i = 0; i < count; i++){
+
+            int kind = data.readByte();
+
+            if(kind < 0 || kind >= Kind.values().length){
+                throw new IOException("Unknown edit kind " + kind);
+            }
+
+            int start = data.readInt();
+            int end = data.readInt();
+            String owner = readString(data);
+            Content content = kind == Kind.DELETE.ordinal() ? null : readContent(data);
+
+            try {
+                edits.add(new Edit(Kind.values()[kind], owner, start, end, content));
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        try {
+            return new RefactoringPlan(sourceName, sourceSize, edits);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static void writeContent(DataOutputStream data, Content content) throws IOException {
+
+        if(content instanceof Text text){
+            data.writeByte(TEXT);
+            writeString(data, text.text);
+        }
+        else if(content instanceof ExtractedMethod method){
+            data.writeByte(EXTRACTED_METHOD);
+            writeStrings(data, method.modifiers);
+            writeString(data, method.name);
+            writeStrings(data, method.parameterTypes);
+            writeStrings(data, method.parameterNames);
+            data.writeInt(method.expressionStart);
+            data.writeInt(method.expressionEnd);
+        }
+        else if(content instanceof ExtractedCall call){
+            data.writeByte(EXTRACTED_CALL);
+            writeString(data, call.name);
+            writeStrings(data, call.arguments);
+        }
+        else {
+            InlinedCall call = (InlinedCall) content;
+            data.writeByte(INLINED_CALL);
+            writeString(data, call.target);
+            writeString(data, call.expression);
+            data.writeBoolean(call.parenthesized);
+        }
+    }
+
+    private static Content readContent(DataInputStream data) throws IOException {
+
+        int tag = data.readByte();
+
+        try {
+            return switch (tag) {
+                case TEXT -> new Text(readString(data));
+                case EXTRACTED_METHOD -> new ExtractedMethod(readStrings(data), readString(data), readStrings(data),
+                        readStrings(data), data.readInt(), data.readInt());
+                case EXTRACTED_CALL -> new ExtractedCall(readString(data), readStrings(data));
+                case INLINED_CALL -> new InlinedCall(readString(data), readString(data), data.readBoolean());
+                default -> throw new IOException("Unknown content tag " + tag);
+            };
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IOException("Invalid content: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream data, List<String> texts) throws IOException {
+
+        data.writeInt(texts.size());
+
+        for(String text : texts){
+            writeString(data, text);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream data) throws IOException {
+
+        int count = data.readInt();
+
+        if(count < 0){
+            throw new IOException("Invalid list size " + count);
+        }
+
+        List<String> texts = new ArrayList<>(Math.min(count, 64));
+
+        for(int i = 0; i < count; i++){
+            texts.add(readString(data));
+        }
+
+        return texts;
+    }
+
+    private static void writeString(DataOutputStream data, String text) throws IOException {
+
+        if(text == null){
+            data.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+
+        int length = data.readInt();
+
+        if(length < 0){
+            return null;
+        }
+
+        return new String(data.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lists edits one per line, for review
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder text = new StringBuilder(sourceName).append(": ").append(edits.size()).append(" edits");
+
+        for(Edit edit : edits){
+            text.append(System.lineSeparator()).append("  ").append(edit);
+        }
+
+        return text.toString();
+    }
+
+    public enum Kind {
+        INSERT,
+        REPLACE,
+        DELETE
+    }
+
+    /**
+     * Code points start..end of the source, end exclusive, replaced by content.
+     * An insert has an empty range, a delete has no content
+     */
+    public static final class Edit {
+
+        private final Kind kind;
+        private final String owner;
+        private final int start;
+        private final int end;
+        private final Content content;
+
+        public Edit(Kind kind, String owner, int start, int end, Content content) {
+
+            if(start < 0 || end < start || (kind == Kind.INSERT) != (start == end) || (kind == Kind.DELETE) != (content == null)){
+                throw new IllegalArgumentException("Invalid " + kind + " of " + start + ".." + end);
+            }
+
+            this.kind = kind;
+            this.owner = owner;
+            this.start = start;
+            this.end = end;
+            this.content = content;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Name of the refactoring making the edit, null when recorded without owner
+         */
+        public String getOwner() {
+            return owner;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * What is written in place of the range, rendered by {@link PlanApplier}; null for a delete
+         */
+        public Content getContent() {
+            return content;
+        }
+
+        @Override
+        public String toString() {
+
+            String range = kind == Kind.INSERT ? "at " + start : start + ".." + end;
+
+            return (owner == null ? "" : owner + " ") + kind + " " + range + (content == null ? "" : ", " + content);
+        }
+    }
+
+    /**
+     * What an edit writes, one of {@link Text}, {@link ExtractedMethod}, {@link ExtractedCall} and {@link InlinedCall}
+     */
+    public abstract static class Content {
+
+        private Content() {
+        }
+    }
+
+    /**
+     * Literal text
+     */
+    public static final class Text extends Content {
+
+        private final String text;
+
+        public Text(String text) {
+            this.text = Objects.requireNonNull(text);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text.lines().count() + " lines";
+        }
+    }
+
+    /**
+     * Boolean method returning an expression of the source, rendered from the <code>boolMethod</code> template
+     */
+    public static final class ExtractedMethod extends Content {
+
+        private final List<String> modifiers;
+        private final String name;
+        private final List<String> parameterTypes;
+        private final List<String> parameterNames;
+        private final int expressionStart;
+        private final int expressionEnd;
+
+        /**
+         * @param modifiers method modifiers, e.g. private static
+         * @param name method name
+         * @param parameterTypes types of parameters
+         * @param parameterNames names of parameters
+         * @param expressionStart first code point of the returned expression in the source
+         * @param expressionEnd code point behind the returned expression
+         */
+        public ExtractedMethod(
+                List<String> modifiers,
+                String name,
+                List<String> parameterTypes,
+                List<String> parameterNames,
+                int expressionStart,
+                int expressionEnd
+        ) {
+            if(parameterTypes.size() != parameterNames.size() || expressionStart < 0 || expressionEnd <= expressionStart){
+                throw new IllegalArgumentException("Invalid method " + name + " of " + expressionStart + ".." + expressionEnd);
+            }
+
+            this.modifiers = List.copyOf(modifiers);
+            this.name = Objects.requireNonNull(name);
+            this.parameterTypes = List.copyOf(parameterTypes);
+            this.parameterNames = List.copyOf(parameterNames);
+            this.expressionStart = expressionStart;
+            this.expressionEnd = expressionEnd;
+        }
+
+        public List<String> getModifiers() {
+            return modifiers;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public List<String> getParameterNames() {
+            return parameterNames;
+        }
+
+        public int getExpressionStart() {
+            return expressionStart;
+        }
+
+        public int getExpressionEnd() {
+            return expressionEnd;
+        }
+
+        @Override
+        public String toString() {
+            return "method " + name + " returning " + expressionStart + ".." + expressionEnd;
+        }
+    }
+
+    /**
+     * Call of an extracted method replacing the expression it returns
+     */
+    public static final class ExtractedCall extends Content {
+
+        private final String name;
+        private final List<String> arguments;
+
+        /**
+         * @param name extracted method
+         * @param arguments local variables passed to the method
+         */
+        public ExtractedCall(String name, List<String> arguments) {
+            this.name = Objects.requireNonNull(name);
+            this.arguments = List.copyOf(arguments);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getArguments() {
+            return arguments;
+        }
+
+        @Override
+        public String toString() {
+            return "call " + name;
+        }
+    }
+
+    /**
+     * Returned expression of a predicate replacing its call site, arguments already substituted for parameters
+     */
+    public static final class InlinedCall extends Content {
+
+        private final String target;
+        private final String expression;
+        private final boolean parenthesized;
+
+        /**
+         * @param target predicate inlined, as it was called, e.g. <code>isValid</code> or <code>Util.isValid</code>
+         * @param expression returned expression with arguments substituted
+         * @param parenthesized whether the expression keeps its precedence within a larger condition
+         */
+        public InlinedCall(String target, String expression, boolean parenthesized) {
+            this.target = Objects.requireNonNull(target);
+            this.expression = Objects.requireNonNull(expression);
+            this.parenthesized = parenthesized;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public String getExpression() {
+            return expression;
+        }
+
+        public boolean isParenthesized() {
+            return parenthesized;
+        }
+
+        @Override
+        public String toString() {
+            return "inlined " + target;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import pl.com.example.grammar.JavaLexer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides from tokens alone whether any of the enabled refactorings could change the file,
+ * so files with nothing to refactor are not parsed at all. The decision is conservative:
+ * a file is skipped only when no if condition could be extracted and no call within
+ * an if condition could be resolved to a method worth inlining.
+ */
+public class RefactoringPrefilter {
+
+    private final List<Refactoring> refactorings;
+    private final int operandsToExtract;
+    private final boolean projectIndexUsed;
+
+    public RefactoringPrefilter(RefactorOptions options, ProjectMethodIndex projectIndex) {
+        this.refactorings = options.getRefactorings();
+        this.operandsToExtract = options.getExpandedEnoughExpressionIdentifier();
+        this.projectIndexUsed = projectIndex != null;
+    }
+
+    /**
+     * Checks whether some enabled refactoring may apply to the file
+     * @param tokens filled token stream of the file
+     */
+    public boolean mayApply(CommonTokenStream tokens){
+
+        List<Token> code = new ArrayList<>();
+
+        // stepping over the stream skips hidden tokens without creating them when tokens are mapped from cache
+        tokens.seek(0);
+
+        while(tokens.LA(1) != Token.EOF){
+            code.add(tokens.LT(1));
+            tokens.consume();
+        }
+
+        tokens.seek(0);
+
+        List<Condition> conditions = findIfConditions(code);
+
+        if(conditions.isEmpty()){
+            return false;
+        }
+
+        if(refactorings.contains(Refactoring.EXTRACT) && mayExtract(conditions)){
+            return true;
+        }
+
+        return refactorings.contains(Refactoring.INLINE) && mayInline(code, conditions);
+    }
+
+    /**
+     * Same count as the extract refactoring: every && and || adds an operand
+     */
+    private boolean mayExtract(List<Condition> conditions){
+
+        for(Condition condition : conditions){
+            if(condition.logicalOperators + 1 >= operandsToExtract){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Unqualified calls within conditions must name a method declared in this file,
+     * calls qualified by a name may be resolved by the project index
+     */
+    private boolean mayInline(List<Token> code, List<Condition> conditions){
+
+        Set<String> declared = null;
+
+        for(Condition condition : conditions){
+            for(int i = condition.start; i < condition.stop; i++){
+
+                if(code.get(i).getType() != JavaLexer.IDENTIFIER || code.get(i + 1).getType() != JavaLexer.LPAREN){
+                    continue;
+                }
+
+                if(projectIndexUsed){
+                    return true;
+                }
+
+                if(i > 0 && code.get(i - 1).getType() == JavaLexer.DOT){
+                    continue;
+                }
+
+                if(declared == null){
+                    declared = declaredMethodNames(code);
+                }
+
+                if(declared.contains(code.get(i).getText())){
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Names followed by '(' and preceded by something ending a type:
+     * a name, primitive type, void, closing generic or array bracket
+     */
+    private static Set<String> declaredMethodNames(List<Token> code){
+
+        Set<String> names = new HashSet<>();
+
+        for(int i = 1; i + 1 < code.size(); i++){
+            if(code.get(i).getType() == JavaLexer.IDENTIFIER
+                    && code.get(i + 1).getType() == JavaLexer.LPAREN
+                    && endsType(code.get(i - 1).getType())
+            ){
+                names.add(code.get(i).getText());
+            }
+        }
+
+        return names;
+    }
+
+    private static boolean endsType(int type){
+        return switch (type) {
+            case JavaLexer.IDENTIFIER, JavaLexer.GT, JavaLexer.RBRACK, JavaLexer.VOID,
+                 JavaLexer.BOOLEAN, JavaLexer.BYTE, JavaLexer.CHAR, JavaLexer.SHORT,
+                 JavaLexer.INT, JavaLexer.LONG, JavaLexer.FLOAT, JavaLexer.DOUBLE -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Token ranges of conditions of if statements, between the parentheses after <code>if</code>
+     */
+    private static List<Condition> findIfConditions(List<Token> code){
+
+        List<Condition> conditions = new ArrayList<>();
+
+        for(int i = 0; i + 1 < code.size(); i++){
+
+            if(code.get(i).getType() != JavaLexer.IF || code.get(i + 1).getType() != JavaLexer.LPAREN){
+                continue;
+            }
+
+            int depth = 0;
+            int operators = 0;
+            int start = i + 2;
+
+            for(int j = i + 1; j < code.size(); j++){
+
+                int type = code.get(j).getType();
+
+                if(type == JavaLexer.LPAREN){
+                    depth++;
+                }
+                else if(type == JavaLexer.RPAREN && --depth == 0){
+                    conditions.add(new Condition(start, j, operators));
+                    break;
+                }
+                else if(type == JavaLexer.AND || type == JavaLexer.OR){
+                    operators++;
+                }
+            }
+        }
+
+        return conditions;
+    }
+
+    private static class Condition {
+        // index of the first token and of the closing parenthesis
+        private final int start;
+        private final int stop;
+        private final int logicalOperators;
+
+        private Condition(int start, int stop, int logicalOperators) {
+            this.start = start;
+            this.stop = stop;
+            this.logicalOperators = logicalOperators;
+        }
+    }
+}
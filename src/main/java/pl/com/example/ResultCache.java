@@ -0,0 +1,415 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.Token;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Directory of refactored outputs keyed by SHA-256 of the source content together with
+ * the build of the tool and refactoring configuration, so a file seen before is not lexed nor parsed again.
+ * An entry is either the refactored output or a marker that the file stays unchanged.
+ * Next to results, the cache keeps {@link TokenFile}s of lexed sources keyed by content and lexer alone,
+ * so a file whose result is missing, e.g. after the configuration changed, is not lexed again.
+ * <p>
+ * Entries are evicted least recently used first once their total size exceeds the limit,
+ * the order survives runs through modification times of entry files. Entries are written
+ * to temporary files and moved into place, so concurrent workers and processes never
+ * see a partial entry; an entry evicted while being restored is reported as a miss.
+ */
+public class ResultCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    // every entry takes at least a filesystem block, markers included
+    private static final long ENTRY_OVERHEAD = 4096;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final byte[] configuration;
+
+    // access ordered, eldest entry is evicted first; guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private ResultCache(Path directory, long maxBytes, String configuration) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.configuration = configuration.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens cache directory, creating it when missing. Entries are ordered by the time they were last used
+     * @param directory cache directory, may be shared by several runs
+     * @param maxBytes size limit of all entries
+     * @param configuration everything besides the source content the output depends on,
+     *                      see {@link #describe(RefactorOptions, ProjectMethodIndex)}
+     */
+    public static ResultCache open(Path directory, long maxBytes, String configuration) throws IOException {
+
+        Files.createDirectories(directory);
+        ResultCache cache = new ResultCache(directory, maxBytes, configuration);
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths.sorted(Comparator.comparing(ResultCache::lastModified)).toList();
+        }
+
+        synchronized (cache) {
+            for(Path file : files){
+
+                String name = file.getFileName().toString();
+
+                if(name.endsWith(TEMP_SUFFIX)){
+                    // left by a run which was killed while storing
+                    Files.deleteIfExists(file);
+                }
+                else {
+                    Kind kind = Kind.of(name);
+
+                    if(kind != null){
+                        String key = name.substring(0, name.length() - kind.suffix.length());
+                        cache.put(key, new Entry(kind, Files.size(file) + ENTRY_OVERHEAD));
+                    }
+                }
+            }
+
+            cache.evict();
+        }
+
+        return cache;
+    }
+
+    /**
+     * Describes what besides the source determines the output: build of the tool,
+     * refactorings and their options, content of the template group and the project method index
+     * @param options refactoring options
+     * @param projectIndex predicates declared across the source tree, may be null
+     */
+    public static String describe(RefactorOptions options, ProjectMethodIndex projectIndex){
+
+        return "build=" + Build.HASH
+                + ";refactorings=" + options.getRefactorings()
+                + ";threshold=" + options.getExpandedEnoughExpressionIdentifier()
+                + ";templates=" + MethodTemplates.getGroupHash()
+                + ";methodIndex=" + (projectIndex == null ? "" : projectIndex.getFingerprint());
+    }
+
+    /**
+     * SHA-256 of the source, computed once and used as key in every cache
+     * @param content bytes of the source file
+     */
+    public static String contentHash(byte[] content){
+        return HexFormat.of().formatHex(sha256().digest(content));
+    }
+
+    /**
+     * SHA-256 of the source given as buffer, e.g. mapped file
+     * @param content bytes of the source file
+     */
+    public static String contentHash(ByteBuffer content){
+
+        MessageDigest digest = sha256();
+        digest.update(content);
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Key of the source under the configuration of this cache
+     * @param contentHash hash of the source, see {@link #contentHash(byte[])}
+     */
+    public String key(String contentHash){
+
+        MessageDigest digest = sha256();
+        digest.update(configuration);
+        digest.update((byte) 0);
+        digest.update(contentHash.getBytes(StandardCharsets.US_ASCII));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Key of the tokens of the source, independent of the refactoring configuration
+     * @param contentHash hash of the source, see {@link #contentHash(byte[])}
+     */
+    public static String tokensKey(String contentHash){
+
+        MessageDigest digest = sha256();
+        digest.update(TokenFile.LEXER_FINGERPRINT.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(contentHash.getBytes(StandardCharsets.US_ASCII));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Writes cached result of the source to target
+     * @param key key of the source content
+     * @param source source file, copied when it is cached as unchanged
+     * @param target file the result is written to, its directory has to exist
+     * @return false when there is no entry for the key
+     */
+    public boolean restore(String key, Path source, Path target) throws IOException {
+
+        Entry entry;
+
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        if(entry == null || entry.kind == Kind.TOKENS){
+            misses.increment();
+            return false;
+        }
+
+        boolean unchanged = entry.kind == Kind.UNCHANGED;
+        Path file = file(key, entry.kind);
+
+        try {
+            Files.copy(unchanged ? source : file, target, StandardCopyOption.REPLACE_EXISTING);
+            // keeps the order of use for later runs
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // evicted meanwhile
+            misses.increment();
+            return false;
+        }
+
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Stores result of the source, evicting least recently used entries above the size limit
+     * @param key key of the source content
+     * @param output refactored file, null when the refactorings left the source unchanged
+     */
+    public void store(String key, Path output) throws IOException {
+
+        if(output == null){
+            write(key, Kind.UNCHANGED, temp -> {});
+        }
+        else {
+            write(key, Kind.OUTPUT, temp -> Files.copy(output, temp, StandardCopyOption.REPLACE_EXISTING));
+        }
+    }
+
+    /**
+     * Finds stored tokens of the source. Looking up tokens does not count as result hit nor miss
+     * @param key key of the source content, see {@link #tokensKey(String)}
+     * @return token file, null when there is none; it may be evicted before it is read
+     */
+    public Path findTokens(String key) throws IOException {
+
+        Entry entry;
+
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+
+        if(entry == null || entry.kind != Kind.TOKENS){
+            return null;
+        }
+
+        Path file = file(key, Kind.TOKENS);
+
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        return file;
+    }
+
+    /**
+     * Stores tokens of the source in the size limit shared with results
+     * @param key key of the source content, see {@link #tokensKey(String)}
+     * @param tokens all tokens of the source including EOF
+     */
+    public void storeTokens(String key, List<Token> tokens) throws IOException {
+
+        write(key, Kind.TOKENS, temp -> {
+            try (OutputStream out = Files.newOutputStream(temp, StandardOpenOption.TRUNCATE_EXISTING)) {
+                TokenFile.write(tokens, out);
+            }
+        });
+    }
+
+    /**
+     * Fills temporary file and moves it into place as entry
+     */
+    private void write(String key, Kind kind, EntryContent content) throws IOException {
+
+        Path file = file(key, kind);
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+
+        try {
+            content.writeTo(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        synchronized (this) {
+            put(key, new Entry(kind, Files.size(file) + ENTRY_OVERHEAD));
+            evict();
+        }
+    }
+
+    private void put(String key, Entry entry){
+
+        Entry previous = entries.put(key, entry);
+
+        if(previous != null){
+            totalBytes -= previous.bytes;
+        }
+
+        totalBytes += entry.bytes;
+    }
+
+    private void evict() throws IOException {
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+
+        while(totalBytes > maxBytes && eldest.hasNext()){
+
+            Map.Entry<String, Entry> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue().bytes;
+            evictions.increment();
+
+            Files.deleteIfExists(file(entry.getKey(), entry.getValue().kind));
+        }
+    }
+
+    private Path file(String key, Kind kind){
+        return directory.resolve(key + kind.suffix);
+    }
+
+    private static FileTime lastModified(Path file){
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * SHA-256 of the jar or class directory the tool runs from, templates included, so a rebuilt tool
+     * never reuses outputs of the previous build even when its version stays the same.
+     * Computed once per process
+     */
+    private static final class Build {
+
+        private static final String HASH = hash();
+
+        private static String hash(){
+            try {
+                Path location = Path.of(ResultCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+                MessageDigest digest = sha256();
+
+                if(Files.isRegularFile(location)){
+                    digest.update(Files.readAllBytes(location));
+                } else {
+                    try (Stream<Path> files = Files.walk(location)) {
+                        for(Path file : files.filter(Files::isRegularFile).sorted().toList()){
+                            digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                            digest.update(Files.readAllBytes(file));
+                        }
+                    }
+                }
+
+                return HexFormat.of().formatHex(digest.digest());
+            } catch (IOException | URISyntaxException | RuntimeException e) {
+                // unknown build, entries written by this run are never reused
+                return "unknown-" + UUID.randomUUID();
+            }
+        }
+    }
+
+    static MessageDigest sha256(){
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private enum Kind {
+        OUTPUT(".out"),
+        UNCHANGED(".same"),
+        TOKENS(".tok");
+
+        private final String suffix;
+
+        Kind(String suffix) {
+            this.suffix = suffix;
+        }
+
+        private static Kind of(String fileName){
+
+            for(Kind kind : values()){
+                if(fileName.endsWith(kind.suffix)){
+                    return kind;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static class Entry {
+        private final Kind kind;
+        private final long bytes;
+
+        private Entry(Kind kind, long bytes) {
+            this.kind = kind;
+            this.bytes = bytes;
+        }
+    }
+
+    private interface EntryContent {
+        void writeTo(Path temp) throws IOException;
+    }
+}
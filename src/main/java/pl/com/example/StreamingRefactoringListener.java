@@ -0,0 +1,110 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import pl.com.example.grammar.JavaParser;
+
+import java.util.List;
+
+/**
+ * Parse listener refactoring the file while it is parsed, so the whole parse tree never exists.
+ * Every top-level member of a class or interface body is walked as soon as the parser exits it
+ * and is then cut off its parent, only the headers of types stay in the tree.
+ * Peak memory of the tree is bounded by the largest member instead of the whole file.
+ * <p>
+ * Listeners see only events of members and rules within them, which is enough for refactorings
+ * working within single method, see {@link #supports(Refactoring)}. A new walk starts whenever
+ * the parser starts the compilation unit again, so edits of a parse abandoned by
+ * {@link ParseMode#SLL_THEN_LL} are dropped.
+ */
+public class StreamingRefactoringListener implements ParseTreeListener {
+
+    private final CommonTokenStream tokens;
+    private final List<Refactoring> refactorings;
+    private final RefactorOptions options;
+    private final ProjectMethodIndex projectIndex;
+    private final Metrics metrics;
+    private CompositeRefactoringListener listener;
+    // members being parsed, a member declared within another one is walked together with it
+    private int memberDepth = 0;
+
+    public StreamingRefactoringListener(
+            CommonTokenStream tokens,
+            RefactorOptions options,
+            ProjectMethodIndex projectIndex,
+            Metrics metrics
+    ) {
+        this.tokens = tokens;
+        this.refactorings = options.getRefactorings();
+        this.options = options;
+        this.projectIndex = projectIndex;
+        this.metrics = metrics;
+        this.listener = newListener();
+    }
+
+    /**
+     * Inline needs all methods of the class body when a call is met, so it cannot be streamed
+     */
+    public static boolean supports(Refactoring refactoring){
+        return refactoring == Refactoring.EXTRACT;
+    }
+
+    /**
+     * Listener of the last walk, it holds the edits once parsing has finished
+     */
+    public CompositeRefactoringListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void enterEveryRule(ParserRuleContext ctx) {
+
+        if(ctx instanceof JavaParser.CompilationUnitContext){
+            listener = newListener();
+            memberDepth = 0;
+        }
+
+        if(isMember(ctx)){
+            memberDepth++;
+        }
+    }
+
+    @Override
+    public void exitEveryRule(ParserRuleContext ctx) {
+
+        if(!isMember(ctx) || --memberDepth > 0){
+            return;
+        }
+
+        if(metrics.isEnabled()){
+            metrics.add(Metrics.Counter.PARSE_TREE_NODES, ParseTrees.countNodes(ctx));
+        }
+
+        long walkStart = metrics.start();
+        ParseTrees.WALKER.walk(listener, ctx);
+        metrics.stop(Metrics.Phase.WALK, walkStart);
+
+        // the member is always the last child, the parser has just added it
+        ctx.getParent().removeLastChild();
+    }
+
+    @Override
+    public void visitTerminal(TerminalNode node) {
+    }
+
+    @Override
+    public void visitErrorNode(ErrorNode node) {
+    }
+
+    private static boolean isMember(ParserRuleContext ctx){
+        return ctx instanceof JavaParser.ClassBodyDeclarationContext
+                || ctx instanceof JavaParser.InterfaceBodyDeclarationContext;
+    }
+
+    private CompositeRefactoringListener newListener(){
+        return new CompositeRefactoringListener(tokens, refactorings, options, projectIndex);
+    }
+}
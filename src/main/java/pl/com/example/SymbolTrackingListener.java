@@ -0,0 +1,180 @@
+package pl.com.example;
+
+import pl.com.example.grammar.JavaParser;
+import pl.com.example.grammar.JavaParserBaseListener;
+
+/**
+ * Base listener keeping {@link LocalSymbols} in sync with the walked code.
+ * Methods, constructors, blocks, lambdas, for loops, catch clauses and
+ * try-with-resources open their own scopes. Subclasses overriding
+ * these methods have to call super implementation.
+ */
+public class SymbolTrackingListener extends JavaParserBaseListener {
+
+    private static final String ARRAY_SUFFIX = "[]";
+
+    protected final LocalSymbols symbols;
+
+    public SymbolTrackingListener() {
+        this(new LocalSymbols());
+    }
+
+    public SymbolTrackingListener(LocalSymbols symbols) {
+        this.symbols = symbols;
+    }
+
+    public LocalSymbols getSymbols() {
+        return symbols;
+    }
+
+    @Override
+    public void enterMethodDeclaration(JavaParser.MethodDeclarationContext ctx) {
+        symbols.enterScope();
+    }
+
+    @Override
+    public void exitMethodDeclaration(JavaParser.MethodDeclarationContext ctx) {
+        symbols.exitScope();
+    }
+
+    @Override
+    public void enterConstructorDeclaration(JavaParser.ConstructorDeclarationContext ctx) {
+        symbols.enterScope();
+    }
+
+    @Override
+    public void exitConstructorDeclaration(JavaParser.ConstructorDeclarationContext ctx) {
+        symbols.exitScope();
+    }
+
+    @Override
+    public void enterInterfaceCommonBodyDeclaration(JavaParser.InterfaceCommonBodyDeclarationContext ctx) {
+        symbols.enterScope();
+    }
+
+    @Override
+    public void exitInterfaceCommonBodyDeclaration(JavaParser.InterfaceCommonBodyDeclarationContext ctx) {
+        symbols.exitScope();
+    }
+
+    @Override
+    public void enterLambdaExpression(JavaParser.LambdaExpressionContext ctx) {
+
+        symbols.enterScope();
+
+        JavaParser.LambdaParametersContext parameters = ctx.lambdaParameters();
+
+        // implicitly typed parameters still shadow outer symbols
+        for(var identifier : parameters.identifier()){
+            symbols.addSymbol(identifier.getText(), null);
+        }
+
+        if(parameters.lambdaLVTIList() != null){
+            for(var parameter : parameters.lambdaLVTIList().lambdaLVTIParameter()){
+                symbols.addSymbol(parameter.identifier().getText(), null);
+            }
+        }
+    }
+
+    @Override
+    public void exitLambdaExpression(JavaParser.LambdaExpressionContext ctx) {
+        symbols.exitScope();
+    }
+
+    @Override
+    public void enterBlock(JavaParser.BlockContext ctx) {
+        symbols.enterScope();
+    }
+
+    @Override
+    public void exitBlock(JavaParser.BlockContext ctx) {
+        symbols.exitScope();
+    }
+
+    @Override
+    public void enterStatement(JavaParser.StatementContext ctx) {
+        if(ctx.FOR() != null || ctx.resourceSpecification() != null){
+            symbols.enterScope();
+        }
+    }
+
+    @Override
+    public void exitStatement(JavaParser.StatementContext ctx) {
+        if(ctx.FOR() != null || ctx.resourceSpecification() != null){
+            symbols.exitScope();
+        }
+    }
+
+    @Override
+    public void enterCatchClause(JavaParser.CatchClauseContext ctx) {
+        symbols.enterScope();
+        symbols.addSymbol(ctx.identifier().getText(), ctx.catchType().getText());
+    }
+
+    @Override
+    public void exitCatchClause(JavaParser.CatchClauseContext ctx) {
+        symbols.exitScope();
+    }
+
+    @Override
+    public void enterFormalParameter(JavaParser.FormalParameterContext ctx) {
+        addVariable(ctx.variableDeclaratorId(), ctx.typeType().getText());
+    }
+
+    @Override
+    public void enterLastFormalParameter(JavaParser.LastFormalParameterContext ctx) {
+        addVariable(ctx.variableDeclaratorId(), ctx.typeType().getText() + ARRAY_SUFFIX);
+    }
+
+    @Override
+    public void enterEnhancedForControl(JavaParser.EnhancedForControlContext ctx) {
+        addVariable(ctx.variableDeclaratorId(), ctx.typeType() == null ? null : ctx.typeType().getText());
+    }
+
+    @Override
+    public void enterResource(JavaParser.ResourceContext ctx) {
+
+        if(ctx.variableDeclaratorId() != null){
+            addVariable(ctx.variableDeclaratorId(), ctx.classOrInterfaceType().getText());
+        }
+        else if(ctx.identifier() != null){
+            symbols.addSymbol(ctx.identifier().getText(), null);
+        }
+    }
+
+    /**
+     * Adds local variables to symbols, <code>var</code> declarations are added without type
+     * @param ctx the parse tree
+     */
+    @Override
+    public void enterLocalVariableDeclaration(JavaParser.LocalVariableDeclarationContext ctx) {
+
+        if(ctx.variableDeclarators() == null){
+            symbols.addSymbol(ctx.identifier().getText(), null);
+            return;
+        }
+
+        String type = ctx.typeType().getText();
+
+        for(var variable : ctx.variableDeclarators().variableDeclarator()){
+            addVariable(variable.variableDeclaratorId(), type);
+        }
+    }
+
+    /**
+     * Adds declared variable, C-style array brackets after the name are moved to its type
+     * @param id declarator of the variable
+     * @param type declared type, null when unknown
+     */
+    private void addVariable(JavaParser.VariableDeclaratorIdContext id, String type){
+
+        // identifier followed by '[' ']' pairs
+        int dimensions = (id.getChildCount() - 1) / 2;
+
+        if(type != null && dimensions > 0){
+            type = type + ARRAY_SUFFIX.repeat(dimensions);
+        }
+
+        symbols.addSymbol(id.identifier().getText(), type);
+    }
+}
@@ -0,0 +1,46 @@
+package pl.com.example;
+
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Filled template which is rendered only when the output is written, see {@link PlanApplier}.
+ * {@link #toString()} renders it
+ */
+public class TemplateFragment {
+
+    private static final String NEWLINE = "\n";
+
+    private final ST template;
+
+    public TemplateFragment(ST template) {
+        this.template = template;
+    }
+
+    /**
+     * Renders the template straight into writer, lines are always separated by <code>\n</code>
+     * @param writer output
+     */
+    public void writeTo(Writer writer) throws IOException {
+        template.write(new AutoIndentWriter(writer, NEWLINE));
+    }
+
+    @Override
+    public String toString() {
+
+        StringWriter writer = new StringWriter();
+
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return writer.toString();
+    }
+}
@@ -0,0 +1,299 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.WritableToken;
+import org.antlr.v4.runtime.misc.Pair;
+import pl.com.example.grammar.JavaLexer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Binary form of lexed tokens, read back without running the lexer.
+ * <p>
+ * Layout: header of magic, format version and token count, then a record of five ints per token:
+ * start and stop char index, line, column, and type shifted left by a byte together with channel.
+ * The file is memory-mapped and the records are read in place. A {@link Token} is created only
+ * when somebody asks for that token: the parser looks ahead by type and skips hidden tokens by
+ * channel straight from the records, so whitespace and comments mostly never become objects.
+ * Token texts are not stored, tokens read them from the char stream of the source like lexed ones do.
+ */
+public final class TokenFile {
+
+    private static final int MAGIC = 0x544f4b53;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_INTS = 5;
+    private static final int RECORD_SIZE = RECORD_INTS * Integer.BYTES;
+    private static final int CHANNEL_BITS = 8;
+    private static final int CHANNEL_MASK = (1 << CHANNEL_BITS) - 1;
+
+    /**
+     * Lexer the stored tokens come from, a changed grammar gives different tokens
+     */
+    public static final String LEXER_FINGERPRINT =
+            "JavaLexer;" + ResultCache.contentHash(JavaLexer._serializedATN.getBytes(StandardCharsets.UTF_8));
+
+    private TokenFile() {
+    }
+
+    /**
+     * Writes all tokens including EOF
+     * @param tokens tokens of filled token stream
+     * @param out output, not closed
+     */
+    public static void write(List<Token> tokens, OutputStream out) throws IOException {
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(tokens.size());
+
+        for(Token token : tokens){
+            data.writeInt(token.getStartIndex());
+            data.writeInt(token.getStopIndex());
+            data.writeInt(token.getLine());
+            data.writeInt(token.getCharPositionInLine());
+            data.writeInt(token.getType() << CHANNEL_BITS | token.getChannel() & CHANNEL_MASK);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Maps token file into memory. The mapping stays valid when the file is evicted meanwhile
+     * @param file token file
+     * @param input source the tokens were lexed from, tokens take their text from it
+     * @return filled token stream creating tokens on demand, null when the file does not match the input
+     */
+    public static CommonTokenStream map(Path file, CharStream input) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION){
+                return null;
+            }
+
+            int count = buffer.getInt(8);
+
+            if(count < 1 || buffer.limit() != HEADER_SIZE + (long) count * RECORD_SIZE){
+                return null;
+            }
+
+            IntBuffer records = buffer.position(HEADER_SIZE).slice().asIntBuffer();
+
+            // EOF starts just behind the last char of the input the tokens were lexed from
+            int eof = (count - 1) * RECORD_INTS;
+
+            if(records.get(eof + 4) >> CHANNEL_BITS != Token.EOF || records.get(eof) != input.size()){
+                return null;
+            }
+
+            return new MappedTokenStream(new Source(records, count, input));
+        }
+    }
+
+    /**
+     * Token stream over the records, already filled: all tokens are known up front, each is created
+     * the first time it is asked for. Lookahead and channel skipping read types and channels
+     * from the records, see {@link #LA(int)} and {@link #nextTokenOnChannel(int, int)}
+     */
+    private static final class MappedTokenStream extends CommonTokenStream {
+
+        private final Source source;
+
+        private MappedTokenStream(Source source) {
+            super(source);
+            this.source = source;
+            this.tokens = new LazyTokens(source);
+            this.fetchedEOF = true;
+        }
+
+        @Override
+        public int LA(int k) {
+
+            if(k <= 0){
+                return super.LA(k);
+            }
+
+            lazyInit();
+            int i = p;
+
+            for(int n = 1; n < k; n++){
+                if(sync(i + 1)){
+                    i = nextTokenOnChannel(i + 1, channel);
+                }
+            }
+
+            return source.type(i);
+        }
+
+        @Override
+        protected int nextTokenOnChannel(int i, int channel) {
+
+            if(i >= size()){
+                return size() - 1;
+            }
+
+            while(source.channel(i) != channel){
+
+                if(source.type(i) == Token.EOF){
+                    return i;
+                }
+
+                i++;
+            }
+
+            return i;
+        }
+
+        @Override
+        protected int previousTokenOnChannel(int i, int channel) {
+
+            if(i >= size()){
+                return size() - 1;
+            }
+
+            while(i >= 0){
+
+                if(source.type(i) == Token.EOF || source.channel(i) == channel){
+                    return i;
+                }
+
+                i--;
+            }
+
+            return i;
+        }
+    }
+
+    /**
+     * Tokens of the file by index, created and kept on first access
+     */
+    private static final class LazyTokens extends AbstractList<Token> implements RandomAccess {
+
+        private final Source source;
+        private final Token[] created;
+
+        private LazyTokens(Source source) {
+            this.source = source;
+            this.created = new Token[source.count];
+        }
+
+        @Override
+        public Token get(int index) {
+
+            Token token = created[index];
+
+            if(token == null){
+                token = source.create(index);
+                created[index] = token;
+            }
+
+            return token;
+        }
+
+        @Override
+        public int size() {
+            return created.length;
+        }
+    }
+
+    /**
+     * Creates tokens of the file from their records, one by one like a lexer would
+     * or by index for {@link LazyTokens}
+     */
+    private static final class Source implements TokenSource {
+
+        private final IntBuffer records;
+        private final int count;
+        private final CharStream input;
+        private final Pair<TokenSource, CharStream> origin;
+        private TokenFactory<?> factory = CommonTokenFactory.DEFAULT;
+        private int next = 0;
+
+        private Source(IntBuffer records, int count, CharStream input) {
+            this.records = records;
+            this.count = count;
+            this.input = input;
+            this.origin = new Pair<>(this, input);
+        }
+
+        private int type(int index){
+            return records.get(index * RECORD_INTS + 4) >> CHANNEL_BITS;
+        }
+
+        private int channel(int index){
+            return records.get(index * RECORD_INTS + 4) & CHANNEL_MASK;
+        }
+
+        private Token create(int index){
+
+            int offset = index * RECORD_INTS;
+            int typeAndChannel = records.get(offset + 4);
+
+            Token token = factory.create(origin, typeAndChannel >> CHANNEL_BITS, null, typeAndChannel & CHANNEL_MASK,
+                    records.get(offset), records.get(offset + 1), records.get(offset + 2), records.get(offset + 3));
+
+            if(token instanceof WritableToken writable){
+                writable.setTokenIndex(index);
+            }
+
+            return token;
+        }
+
+        @Override
+        public Token nextToken() {
+            // stream asking past EOF gets EOF again
+            return create(Math.min(next++, count - 1));
+        }
+
+        @Override
+        public int getLine() {
+            return next < count ? records.get(next * RECORD_INTS + 2) : 0;
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return next < count ? records.get(next * RECORD_INTS + 3) : 0;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public String getSourceName() {
+            return input.getSourceName();
+        }
+
+        @Override
+        public void setTokenFactory(TokenFactory<?> factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public TokenFactory<?> getTokenFactory() {
+            return factory;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unified diff of a source and its refactored version, made straight from the edit positions
+ * of a {@link RefactoringPlan} instead of comparing both texts.
+ * <p>
+ * Lines touched by edits form a changed block, printed as all its old lines removed and all its
+ * new lines added. Blocks closer than twice the context are printed in one hunk. Only the line starts
+ * of the source are indexed, every line is read from the char stream when it is printed.
+ */
+public final class UnifiedDiff {
+
+    private static final int CONTEXT_LINES = 3;
+    private static final int SCAN_CHUNK = 8192;
+    private static final String NO_NEWLINE = "\\ No newline at end of file\n";
+
+    private final RefactoringPlan plan;
+    private final CharStream source;
+    private final int size;
+    // code point each line starts at, a newline ending the source does not start another line
+    private final int[] lineStarts;
+    private final int lineCount;
+
+    private UnifiedDiff(RefactoringPlan plan, CharStream source) {
+        this.plan = plan;
+        this.source = source;
+        this.size = source.size();
+
+        int[] starts = new int[64];
+        int count = size == 0 ? 0 : 1;
+
+        for(int chunk = 0; chunk < size; chunk += SCAN_CHUNK){
+
+            String text = source.getText(Interval.of(chunk, Math.min(chunk + SCAN_CHUNK, size) - 1));
+            int offset = chunk;
+
+            for(int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i)), offset++){
+                if(text.charAt(i) == '\n' && offset + 1 < size){
+                    if(count == starts.length){
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = offset + 1;
+                }
+            }
+        }
+
+        this.lineStarts = starts;
+        this.lineCount = count;
+    }
+
+    /**
+     * Writes the diff of one file, nothing when the plan is empty
+     * @param plan edits of the source
+     * @param source source the plan was made for
+     * @param path path of the file printed in the header
+     * @param writer output, not closed
+     * @throws IllegalArgumentException when the size of the source differs from the planned one
+     */
+    public static void write(RefactoringPlan plan, CharStream source, String path, Writer writer) throws IOException {
+
+        if(source.size() != plan.getSourceSize()){
+            throw new IllegalArgumentException("Plan of " + plan.getSourceSize() + " code points does not match "
+                    + source.getSourceName() + " of " + source.size());
+        }
+
+        if(plan.isEmpty()){
+            return;
+        }
+
+        new UnifiedDiff(plan, source).write(path, writer);
+    }
+
+    /**
+     * Path of the source as patch tools expect it, relative to the working directory when it lies within it
+     */
+    public static String displayPath(Path source){
+
+        Path path = source.normalize();
+
+        if(path.isAbsolute()){
+            Path workingDirectory = Path.of("").toAbsolutePath();
+            path = path.startsWith(workingDirectory) ? workingDirectory.relativize(path) : path;
+        }
+
+        return path.toString().replace('\\', '/');
+    }
+
+    private void write(String path, Writer writer) throws IOException {
+
+        boolean relative = !path.startsWith("/");
+        writer.write("--- " + (relative ? "a/" : "") + path + "\n");
+        writer.write("+++ " + (relative ? "b/" : "") + path + "\n");
+
+        List<Block> blocks = blocks();
+        int delta = 0;
+        int first = 0;
+
+        while(first < blocks.size()){
+
+            int last = first;
+
+            while(last + 1 < blocks.size() && blocks.get(last + 1).from - blocks.get(last).to <= 2 * CONTEXT_LINES){
+                last++;
+            }
+
+            delta += writeHunk(blocks.subList(first, last + 1), delta, writer);
+            first = last + 1;
+        }
+    }
+
+    /**
+     * @param delta lines added minus lines removed by the previous hunks
+     * @return lines added minus lines removed by this hunk
+     */
+    private int writeHunk(List<Block> blocks, int delta, Writer writer) throws IOException {
+
+        int from = Math.max(0, blocks.get(0).from - CONTEXT_LINES);
+        int to = Math.min(lineCount, blocks.get(blocks.size() - 1).to + CONTEXT_LINES);
+
+        StringBuilder body = new StringBuilder();
+        int newLines = 0;
+        int line = from;
+
+        for(Block block : blocks){
+
+            for(; line < block.from; line++, newLines++){
+                appendLine(body, ' ', line(line));
+            }
+
+            for(; line < block.to; line++){
+                appendLine(body, '-', line(line));
+            }
+
+            for(String added : block.lines){
+                appendLine(body, '+', added);
+            }
+            newLines += block.lines.size();
+        }
+
+        for(; line < to; line++, newLines++){
+            appendLine(body, ' ', line(line));
+        }
+
+        int oldLines = to - from;
+        int newFrom = from + delta;
+
+        // an empty range is given by the line before it
+        writer.write("@@ -" + (oldLines == 0 ? from : from + 1) + "," + oldLines
+                + " +" + (newLines == 0 ? newFrom : newFrom + 1) + "," + newLines + " @@\n");
+        writer.write(body.toString());
+
+        return newLines - oldLines;
+    }
+
+    private static void appendLine(StringBuilder body, char prefix, String line){
+
+        body.append(prefix).append(line);
+
+        if(!line.endsWith("\n")){
+            body.append('\n').append(NO_NEWLINE);
+        }
+    }
+
+    /**
+     * Groups edits into blocks of whole lines, edits sharing a line are in one block.
+     * A block whose new text would not end with a newline takes the following line too
+     */
+    private List<Block> blocks() throws IOException {
+
+        List<RefactoringPlan.Edit> edits = plan.getEdits();
+        List<Block> blocks = new ArrayList<>();
+        int next = 0;
+
+        while(next < edits.size()){
+
+            int firstEdit = next;
+            int from = firstLine(edits.get(next));
+            int to = endLine(edits.get(next));
+            String text;
+
+            while(true){
+
+                while(next < edits.size() && (firstLine(edits.get(next)) < to || firstLine(edits.get(next)) == from)){
+                    to = Math.max(to, endLine(edits.get(next)));
+                    next++;
+                }
+
+                text = apply(edits.subList(firstEdit, next), from, to);
+
+                if(text.isEmpty() || text.endsWith("\n") || to == lineCount){
+                    break;
+                }
+
+                // the line break of the last line was edited away, the next line joins it
+                to++;
+            }
+
+            blocks.add(new Block(from, to, split(text)));
+        }
+
+        return blocks;
+    }
+
+    private String apply(List<RefactoringPlan.Edit> edits, int fromLine, int toLine) throws IOException {
+
+        StringWriter text = new StringWriter();
+        int position = fromLine < lineCount ? lineStarts[fromLine] : size;
+
+        for(RefactoringPlan.Edit edit : edits){
+
+            text.append(text(position, edit.getStart()));
+
+            if(edit.getContent() != null){
+                PlanApplier.write(edit.getContent(), source, text);
+            }
+
+            position = edit.getEnd();
+        }
+
+        return text.append(text(position, lineEnd(toLine - 1))).toString();
+    }
+
+    /**
+     * Lines of text, each with its line break
+     */
+    private static List<String> split(String text){
+
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+
+        while(start < text.length()){
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+
+        return lines;
+    }
+
+    private int firstLine(RefactoringPlan.Edit edit){
+
+        if(edit.getStart() < size){
+            return lineOf(edit.getStart());
+        }
+
+        // at the end, a source ending with a newline gets a new line
+        return lineCount > 0 && !endsWithNewline() ? lineCount - 1 : lineCount;
+    }
+
+    private int endLine(RefactoringPlan.Edit edit){
+
+        if(edit.getEnd() > edit.getStart()){
+            return lineOf(edit.getEnd() - 1) + 1;
+        }
+
+        int line = firstLine(edit);
+        return line < lineCount ? line + 1 : line;
+    }
+
+    private boolean endsWithNewline(){
+        return size > 0 && source.getText(Interval.of(size - 1, size - 1)).equals("\n");
+    }
+
+    private int lineOf(int offset){
+
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private int lineEnd(int line){
+
+        if(line < 0){
+            return 0;
+        }
+
+        return line + 1 < lineCount ? lineStarts[line + 1] : size;
+    }
+
+    private String line(int line){
+        return text(lineStarts[line], lineEnd(line));
+    }
+
+    private String text(int from, int to){
+        return from < to ? source.getText(Interval.of(from, to - 1)) : "";
+    }
+
+    /**
+     * Old lines from..to, to exclusive, replaced by new lines
+     */
+    private static class Block {
+        private final int from;
+        private final int to;
+        private final List<String> lines;
+
+        private Block(int from, int to, List<String> lines) {
+            this.from = from;
+            this.to = to;
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.com.example.grammar.JavaLexer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EditLogTest {
+
+    // tokens a + b + c + d + e are indexes 0..8, EOF is 9
+    private static final String SOURCE = "a+b+c+d+e";
+
+    private CharStream input;
+    private EditLog log;
+    private EditLog extract;
+    private EditLog inline;
+
+    @BeforeEach
+    void lex(){
+        input = CharStreams.fromString(SOURCE);
+        CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(input));
+        tokens.fill();
+
+        log = new EditLog(tokens);
+        extract = log.withOwner(Refactoring.EXTRACT.name());
+        inline = log.withOwner(Refactoring.INLINE.name());
+    }
+
+    @Test
+    void replacementOverlappingOtherOwnerIsRejected(){
+
+        assertTrue(extract.replace(2, 4, "X"));
+        assertFalse(inline.replace(4, 6, "Y"));
+
+        assertEquals(1, log.getConflicts().size());
+        assertEquals("a+X+d+e", log.getText());
+    }
+
+    @Test
+    void replacementContainingOtherOwnerInsertIsRejected(){
+
+        assertTrue(inline.insertBefore(4, "!"));
+        assertFalse(extract.replace(2, 6, "X"));
+
+        assertEquals(1, log.getConflicts().size());
+        assertEquals("a+b+!c+d+e", log.getText());
+    }
+
+    @Test
+    void insertWithinOtherOwnerReplacementIsRejected(){
+
+        assertTrue(extract.replace(2, 6, "X"));
+        assertFalse(inline.insertBefore(4, "!"));
+        assertFalse(inline.insertAfter(2, "!"));
+
+        assertEquals(2, log.getConflicts().size());
+        assertEquals("a+X+e", log.getText());
+    }
+
+    @Test
+    void partialOverlapOfSameOwnerThrows(){
+
+        assertTrue(extract.replace(2, 4, "X"));
+
+        assertThrows(IllegalArgumentException.class, () -> extract.replace(4, 6, "Y"));
+        assertThrows(IllegalArgumentException.class, () -> extract.replace(3, 3, "Y"));
+        assertThrows(IllegalArgumentException.class, () -> extract.insertBefore(3, "!"));
+    }
+
+    @Test
+    void replacementContainingEarlierEditsOfSameOwnerDropsThem(){
+
+        assertTrue(extract.replace(2, 2, "B"));
+        assertTrue(extract.insertBefore(4, "!"));
+        assertTrue(extract.replace(0, 6, "Z"));
+
+        assertEquals("Z+e", log.getText());
+        assertTrue(log.getConflicts().isEmpty());
+    }
+
+    @Test
+    void textInsertedBeforeReplacementIsKept(){
+
+        assertTrue(extract.insertBefore(2, "!"));
+        assertTrue(extract.replace(2, 4, "X"));
+
+        assertEquals("a+!X+d+e", log.getText());
+    }
+
+    @Test
+    void insertsAtOneGapKeepTheirOrder(){
+
+        assertTrue(extract.insertBefore(2, "1"));
+        assertTrue(extract.insertBefore(2, "0"));
+        assertTrue(extract.insertAfter(1, "2"));
+        assertTrue(extract.insertAfter(1, "3"));
+
+        assertEquals("a+0123b+c+d+e", log.getText());
+    }
+
+    @Test
+    void adjacentDeletesOfSameOwnerAreMerged(){
+
+        assertTrue(inline.delete(2, 3));
+        assertTrue(inline.delete(4, 5));
+
+        List<RefactoringPlan.Edit> edits = log.toPlan().getEdits();
+
+        assertEquals("a+d+e", log.getText());
+        assertEquals(1, edits.size());
+        assertEquals(RefactoringPlan.Kind.DELETE, edits.get(0).getKind());
+        assertEquals(2, edits.get(0).getStart());
+        assertEquals(6, edits.get(0).getEnd());
+    }
+
+    @Test
+    void overlappingDeletesOfSameOwnerAreMerged(){
+
+        assertTrue(inline.delete(4, 7));
+        assertTrue(inline.delete(2, 5));
+
+        assertEquals("a+e", log.getText());
+        assertEquals(1, log.toPlan().getEdits().size());
+    }
+
+    @Test
+    void deletesSeparatedByInsertAreNotMerged(){
+
+        assertTrue(inline.insertBefore(4, "!"));
+        assertTrue(inline.delete(2, 3));
+        assertTrue(inline.delete(4, 5));
+
+        assertEquals("a+!d+e", log.getText());
+        assertEquals(3, log.toPlan().getEdits().size());
+    }
+
+    @Test
+    void adjacentDeletesOfOtherOwnersAreNotMerged(){
+
+        assertTrue(extract.delete(2, 3));
+        assertTrue(inline.delete(4, 5));
+
+        assertEquals("a+d+e", log.getText());
+        assertEquals(2, log.toPlan().getEdits().size());
+        assertTrue(log.getConflicts().isEmpty());
+    }
+
+    @Test
+    void overlappingDeletesOfOtherOwnersConflict(){
+
+        assertTrue(extract.delete(2, 5));
+        assertFalse(inline.delete(4, 7));
+
+        assertEquals("a+d+e", log.getText());
+        assertEquals(1, log.getConflicts().size());
+    }
+
+    @Test
+    void planRendersAsLog() throws IOException {
+
+        assertTrue(extract.insertBefore(0, "x"));
+        assertTrue(extract.replace(2, 4, new RefactoringPlan.ExtractedCall("f", List.of("b", "c"))));
+        assertTrue(inline.replace(6, 6, new RefactoringPlan.InlinedCall("g", "d>0", true)));
+        assertTrue(inline.delete(7, 8));
+        assertTrue(inline.insertAfter(9, "!"));
+
+        StringWriter applied = new StringWriter();
+        PlanApplier.apply(log.toPlan(), input, applied);
+
+        assertEquals("xa+f(b, c)+(d>0)!", log.getText());
+        assertEquals(log.getText(), applied.toString());
+    }
+}
@@ -0,0 +1,165 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.com.example.grammar.JavaLexer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Mapped stream reads the same code points and texts as {@link CharStreams#fromPath(Path)}
+ */
+class MappedCharStreamTest {
+
+    private static final String ASCII = """
+            package test;
+
+            public class Test {
+                // comment
+                boolean check(int a, int b) {
+                    return a > 0 && b > 0;
+                }
+            }
+            """;
+
+    private static final String MULTIBYTE = """
+            package test;
+
+            /** Zażółć gęślą jaźń, 日本語, 😀 and 𝔘𝔫𝔦𝔠𝔬𝔡𝔢 */
+            public class Test {
+                String text = "€ ½ ä 😀😀😀";
+                boolean zażółć(int ł) {
+                    return ł > 0;
+                }
+            }
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void asciiSource() throws IOException {
+        assertSameAsFromPath(ASCII);
+    }
+
+    @Test
+    void multibyteSource() throws IOException {
+        assertSameAsFromPath(MULTIBYTE);
+    }
+
+    @Test
+    void multibyteSourceAcrossManyCheckpoints() throws IOException {
+        assertSameAsFromPath(MULTIBYTE.repeat(50));
+    }
+
+    @Test
+    void emptySource() throws IOException {
+        assertSameAsFromPath("");
+    }
+
+    @Test
+    void invalidUtf8IsNotMapped() throws IOException {
+
+        Path file = directory.resolve("Invalid.java");
+        Files.write(file, new byte[]{'c', 'l', 'a', 's', 's', ' ', (byte) 0xc3, (byte) 0x28});
+
+        assertNull(MappedCharStream.open(file));
+    }
+
+    private void assertSameAsFromPath(String text) throws IOException {
+
+        Path file = directory.resolve("Test.java");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        CharStream expected = CharStreams.fromPath(file, StandardCharsets.UTF_8);
+        MappedCharStream mapped = MappedCharStream.open(file);
+
+        assertNotNull(mapped);
+        assertEquals(expected.size(), mapped.size());
+
+        assertSameCodePoints(expected, mapped);
+        assertSameTexts(expected, mapped);
+        assertSameTokens(CharStreams.fromPath(file, StandardCharsets.UTF_8), MappedCharStream.open(file));
+    }
+
+    private static void assertSameCodePoints(CharStream expected, CharStream actual){
+
+        for(int i = 0; i <= expected.size(); i++){
+            assertEquals(expected.index(), actual.index());
+            assertEquals(expected.LA(1), actual.LA(1), "code point " + i);
+            assertEquals(expected.LA(-1), actual.LA(-1), "code point before " + i);
+
+            if(expected.LA(1) != IntStream.EOF){
+                expected.consume();
+                actual.consume();
+            }
+        }
+
+        // back to the start and forward again
+        for(int i : new int[]{0, expected.size() / 2, expected.size()}){
+            expected.seek(i);
+            actual.seek(i);
+            assertEquals(expected.LA(1), actual.LA(1), "code point after seek to " + i);
+        }
+    }
+
+    private static void assertSameTexts(CharStream expected, CharStream actual){
+
+        int size = expected.size();
+        assertEquals(expected.getText(Interval.of(0, size - 1)), actual.getText(Interval.of(0, size - 1)));
+
+        // texts are asked for out of order, as by the rewriter after lexing
+        Random random = new Random(size);
+
+        for(int i = 0; i < 200 && size > 0; i++){
+            int start = random.nextInt(size);
+            int stop = Math.min(size - 1, start + random.nextInt(100));
+
+            assertEquals(expected.getText(Interval.of(start, stop)), actual.getText(Interval.of(start, stop)),
+                    "text " + start + ".." + stop);
+        }
+    }
+
+    private static void assertSameTokens(CharStream expected, CharStream actual){
+
+        List<Token> expectedTokens = lex(expected);
+        List<Token> actualTokens = lex(actual);
+
+        assertEquals(expectedTokens.size(), actualTokens.size());
+
+        for(int i = 0; i < expectedTokens.size(); i++){
+            Token token = expectedTokens.get(i);
+            Token other = actualTokens.get(i);
+
+            assertEquals(token.getType(), other.getType(), "type of token " + i);
+            assertEquals(token.getStartIndex(), other.getStartIndex(), "start of token " + i);
+            assertEquals(token.getStopIndex(), other.getStopIndex(), "stop of token " + i);
+            assertEquals(token.getLine(), other.getLine(), "line of token " + i);
+            assertEquals(token.getCharPositionInLine(), other.getCharPositionInLine(), "column of token " + i);
+            assertEquals(token.getText(), other.getText(), "text of token " + i);
+        }
+    }
+
+    private static List<Token> lex(CharStream input){
+
+        CommonTokenStream tokens = new CommonTokenStream(new JavaLexer(input));
+        tokens.fill();
+
+        return tokens.getTokens();
+    }
+}
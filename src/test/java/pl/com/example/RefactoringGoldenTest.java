@@ -0,0 +1,78 @@
+package pl.com.example;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Refactors every source under <code>golden/extract</code> and <code>golden/inline</code>
+ * and compares the output with the <code>.expected</code> file next to it
+ */
+class RefactoringGoldenTest {
+
+    private static final String EXPECTED_SUFFIX = ".expected";
+
+    static Stream<Path> extractCases() throws IOException, URISyntaxException {
+        return cases("extract");
+    }
+
+    static Stream<Path> inlineCases() throws IOException, URISyntaxException {
+        return cases("inline");
+    }
+
+    @ParameterizedTest
+    @MethodSource("extractCases")
+    void extract(Path source, @TempDir Path out) throws IOException {
+        assertEquals(expected(source), refactor(source, out, "--refactoring", "extract"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("extractCases")
+    void extractWhileStreaming(Path source, @TempDir Path out) throws IOException {
+        assertEquals(expected(source), refactor(source, out, "--refactoring", "extract", "--streaming"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("inlineCases")
+    void inline(Path source, @TempDir Path out) throws IOException {
+        assertEquals(expected(source), refactor(source, out, "--refactoring", "inline"));
+    }
+
+    private static Stream<Path> cases(String refactoring) throws IOException, URISyntaxException {
+
+        Path directory = Path.of(RefactoringGoldenTest.class.getResource("/golden/" + refactoring).toURI());
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".java")).sorted().toList().stream();
+        }
+    }
+
+    private static String expected(Path source) throws IOException {
+        return Files.readString(source.resolveSibling(source.getFileName() + EXPECTED_SUFFIX), StandardCharsets.UTF_8);
+    }
+
+    private static String refactor(Path source, Path out, String... args) throws IOException {
+
+        List<String> options = new ArrayList<>(List.of(args));
+        options.add(source.toString());
+
+        Path target = out.resolve(source.getFileName());
+        FileResult result = new FileRefactorer(RefactorOptions.parse(options.toArray(String[]::new))).refactor(source, target);
+
+        assertFalse(result.isFailed(), () -> "Refactoring failed: " + result.getFailure());
+
+        return Files.readString(target, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,254 @@
+package pl.com.example;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Patches the source with the diff of a plan and checks the result equals the plan applied by {@link PlanApplier}
+ */
+class UnifiedDiffTest {
+
+    private static final Pattern HUNK = Pattern.compile("@@ -(\\d+),(\\d+) \\+(\\d+),(\\d+) @@\n");
+
+    @Test
+    void replacementWithinLine() throws IOException {
+        roundTrip("one\ntwo\nthree\n", replace(4, 7, "2"));
+    }
+
+    @Test
+    void insertionOfLines() throws IOException {
+        roundTrip("one\ntwo\nthree\n", insert(8, "inserted\nlines\n"));
+    }
+
+    @Test
+    void deletionOfWholeLines() throws IOException {
+        roundTrip("one\ntwo\nthree\nfour\n", delete(4, 14));
+    }
+
+    @Test
+    void deletionJoiningLines() throws IOException {
+        roundTrip("one\ntwo\nthree\n", delete(3, 4));
+    }
+
+    @Test
+    void insertionAtStart() throws IOException {
+        roundTrip("one\ntwo\n", insert(0, "zero\n"));
+    }
+
+    @Test
+    void insertionAtEndOfSourceWithoutNewline() throws IOException {
+        roundTrip("one\ntwo", insert(7, "\nthree"));
+    }
+
+    @Test
+    void insertionAtEndOfSourceWithNewline() throws IOException {
+        roundTrip("one\ntwo\n", insert(8, "three\n"));
+    }
+
+    @Test
+    void newlineAtEndRemoved() throws IOException {
+        roundTrip("one\ntwo\n", delete(7, 8));
+    }
+
+    @Test
+    void distantEditsGoToSeparateHunks() throws IOException {
+
+        StringBuilder source = new StringBuilder();
+        for(int i = 0; i < 30; i++){
+            source.append("line").append(i).append('\n');
+        }
+
+        String text = source.toString();
+        int near = text.indexOf("line2\n");
+        int far = text.indexOf("line25\n");
+
+        String diff = roundTrip(text, replace(near, near + 5, "second"), insert(far, "added\n"));
+
+        assertEquals(2, HUNK.matcher(diff).results().count());
+    }
+
+    @Test
+    void nearEditsShareHunk() throws IOException {
+
+        String text = "a\nb\nc\nd\ne\nf\ng\nh\n";
+
+        String diff = roundTrip(text, replace(0, 1, "A"), delete(8, 10), insert(14, "x\n"));
+
+        assertEquals(1, HUNK.matcher(diff).results().count());
+    }
+
+    @Test
+    void multibyteSource() throws IOException {
+
+        String text = "zażółć\ngęślą\n😀 jaźń\n";
+        // code points, the emoji is one
+        roundTrip(text, replace(7, 12, "GĘŚLĄ"), insert(15, "!"));
+    }
+
+    @Test
+    void emptyPlanWritesNothing() throws IOException {
+
+        StringWriter diff = new StringWriter();
+        UnifiedDiff.write(new RefactoringPlan("Test.java", 4, List.of()), CharStreams.fromString("one\n"), "Test.java", diff);
+
+        assertTrue(diff.toString().isEmpty());
+    }
+
+    @Test
+    void refactoredFile(@TempDir Path out) throws IOException, URISyntaxException {
+
+        Path source = Path.of(UnifiedDiffTest.class.getResource("/golden/extract/Members.java").toURI());
+        RefactorOptions options = RefactorOptions.parse(new String[]{"--refactoring", "extract,inline", source.toString()});
+
+        FileResult result = new FileRefactorer(options).refactor(source, out.resolve("Members.java"));
+        assertFalse(result.isFailed(), () -> "Refactoring failed: " + result.getFailure());
+
+        RefactorOptions diffOptions = RefactorOptions.parse(new String[]{"--refactoring", "extract,inline", "--diff", "-", source.toString()});
+        String diff = new FileRefactorer(diffOptions).refactor(source, out.resolve("unused")).takePatch();
+
+        String text = Files.readString(source, StandardCharsets.UTF_8);
+        assertEquals(Files.readString(out.resolve("Members.java"), StandardCharsets.UTF_8), patch(text, diff));
+    }
+
+    /**
+     * @return the diff
+     */
+    private static String roundTrip(String text, RefactoringPlan.Edit... edits) throws IOException {
+
+        CharStream source = CharStreams.fromString(text);
+        RefactoringPlan plan = new RefactoringPlan("Test.java", source.size(), List.of(edits));
+
+        StringWriter applied = new StringWriter();
+        PlanApplier.apply(plan, source, applied);
+
+        StringWriter diff = new StringWriter();
+        UnifiedDiff.write(plan, source, "Test.java", diff);
+
+        assertEquals(applied.toString(), patch(text, diff.toString()), diff::toString);
+
+        return diff.toString();
+    }
+
+    private static RefactoringPlan.Edit replace(int start, int end, String text){
+        return new RefactoringPlan.Edit(RefactoringPlan.Kind.REPLACE, null, start, end, new RefactoringPlan.Text(text));
+    }
+
+    private static RefactoringPlan.Edit insert(int at, String text){
+        return new RefactoringPlan.Edit(RefactoringPlan.Kind.INSERT, null, at, at, new RefactoringPlan.Text(text));
+    }
+
+    private static RefactoringPlan.Edit delete(int start, int end){
+        return new RefactoringPlan.Edit(RefactoringPlan.Kind.DELETE, null, start, end, null);
+    }
+
+    /**
+     * Applies unified diff as patch would, checking that context and removed lines match the source
+     */
+    private static String patch(String source, String diff){
+
+        List<String> old = lines(source);
+        List<String> lines = lines(diff);
+        StringBuilder patched = new StringBuilder();
+        int next = 0;
+        int i = 2;
+
+        assertTrue(lines.get(0).startsWith("--- ") && lines.get(1).startsWith("+++ "), diff);
+
+        while(i < lines.size()){
+
+            Matcher hunk = HUNK.matcher(lines.get(i++));
+            assertTrue(hunk.matches(), diff);
+
+            int from = Integer.parseInt(hunk.group(1));
+            int count = Integer.parseInt(hunk.group(2));
+            int newFrom = Integer.parseInt(hunk.group(3));
+            int newCount = Integer.parseInt(hunk.group(4));
+
+            // an empty range is given by the line before it
+            int start = count == 0 ? from : from - 1;
+            assertTrue(start >= next, diff);
+
+            while(next < start){
+                patched.append(old.get(next++));
+            }
+
+            assertEquals(newCount == 0 ? newFrom : newFrom - 1, lines(patched.toString()).size(), diff);
+
+            int oldLines = 0;
+            int newLines = 0;
+
+            while(i < lines.size() && !lines.get(i).startsWith("@@")){
+
+                String line = lines.get(i++);
+                String text = line.substring(1);
+
+                if(i < lines.size() && lines.get(i).startsWith("\\")){
+                    text = text.substring(0, text.length() - 1);
+                    i++;
+                }
+
+                switch(line.charAt(0)){
+                    case ' ' -> {
+                        assertEquals(old.get(next++), text, diff);
+                        patched.append(text);
+                        oldLines++;
+                        newLines++;
+                    }
+                    case '-' -> {
+                        assertEquals(old.get(next++), text, diff);
+                        oldLines++;
+                    }
+                    case '+' -> {
+                        patched.append(text);
+                        newLines++;
+                    }
+                    default -> throw new AssertionError("Unexpected line " + line + " in\n" + diff);
+                }
+            }
+
+            assertEquals(count, oldLines, diff);
+            assertEquals(newCount, newLines, diff);
+        }
+
+        while(next < old.size()){
+            patched.append(old.get(next++));
+        }
+
+        return patched.toString();
+    }
+
+    /**
+     * Lines of text, each with its line break
+     */
+    private static List<String> lines(String text){
+
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+
+        while(start < text.length()){
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,48 @@
+package golden;
+
+import java.util.List;
+
+public class Members {
+
+    private static int limit = 10;
+    private final boolean ready;
+
+    static {
+        int seed = 3;
+        if (seed > 0 && seed < limit && seed != 5) {
+            limit = seed;
+        }
+    }
+
+    public Members(int size, boolean flag) {
+        if (size > 0 && flag && size < limit) {
+            ready = true;
+        } else {
+            ready = false;
+        }
+    }
+
+    public static boolean check(int a, int b) {
+        if (a > 0 && b > 0 && a < b) {
+            return true;
+        }
+        return false;
+    }
+
+    public int count(List<String> items, String prefix) {
+        int count = 0;
+        for (String item : items) {
+            if (item != null && item.startsWith(prefix) && ready) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean shortCondition(int a) {
+        if (a > 0 && a < 5) {
+            return true;
+        }
+        return false;
+    }
+}
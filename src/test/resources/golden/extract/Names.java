@@ -0,0 +1,25 @@
+package golden;
+
+public class Names {
+
+    public void run(int x, int y) {
+        if (x > 0 // positive
+                && y > 0
+                && x != y) {
+            System.out.println(x);
+        }
+    }
+
+    private boolean boolFunction1(int x) {
+        return x > 1;
+    }
+
+    interface Checks {
+        default boolean valid(int v) {
+            if (v > 0 && v < 100 && v % 2 == 0) {
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package golden;
+
+public class Predicates {
+
+    public void run(int value, String name) {
+        if (isPositive(value)) {
+            System.out.println(value);
+        }
+        if (isNamed(name) && value > 2) {
+            System.out.println(name);
+        }
+        if (inRange(value + 1, 10)) {
+            System.out.println("in range");
+        }
+    }
+
+    // positive values only
+    private boolean isPositive(int number) {
+        return number > 0;
+    }
+
+    private boolean isNamed(String text) {
+        return text != null && !text.isEmpty();
+    }
+
+    private boolean inRange(int number, int max) {
+        return number >= 0 && number < max;
+    }
+}
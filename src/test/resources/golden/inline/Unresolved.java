@@ -0,0 +1,19 @@
+package golden;
+
+import lib.Util;
+
+public class Unresolved {
+
+    public void run(int value) {
+        if (Util.ok(value)) {
+            System.out.println(value);
+        }
+        if (isLarge(value) && value < 10) {
+            System.out.println("large");
+        }
+    }
+
+    private boolean isLarge(int value) {
+        return value > 3;
+    }
+}